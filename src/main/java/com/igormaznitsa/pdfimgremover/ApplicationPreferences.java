@@ -21,6 +21,14 @@ import java.util.prefs.Preferences;
 public final class ApplicationPreferences {
 
     public static final String PROPERTY_LOOK_AND_FEEL = "lookAndFeel";
+    public static final String PROPERTY_HIDE_MODE = "hideMode";
+    public static final String PROPERTY_DOWNSAMPLE_THRESHOLD_DPI = "downsampleThresholdDpi";
+    public static final String PROPERTY_DOWNSAMPLE_TARGET_DPI = "downsampleTargetDpi";
+    public static final String PROPERTY_MEMORY_MAPPED_INPUT = "memoryMappedInput";
+    public static final String PROPERTY_STREAM_CACHE_MODE = "streamCacheMode";
+    public static final String PROPERTY_STREAM_CACHE_MEMORY_LIMIT_MB = "streamCacheMemoryLimitMb";
+    public static final String PROPERTY_RESOURCE_CACHE_MB = "resourceCacheMb";
+    public static final String PROPERTY_INDEX_CACHE_MB = "indexCacheMb";
     
     public static final ApplicationPreferences INSTANCE = new ApplicationPreferences();
 
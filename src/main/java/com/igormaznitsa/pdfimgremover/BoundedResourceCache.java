@@ -0,0 +1,292 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.ResourceCache;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.documentinterchange.markedcontent.PDPropertyList;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptor;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.pattern.PDAbstractPattern;
+import org.apache.pdfbox.pdmodel.graphics.shading.PDShading;
+import org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState;
+
+/**
+ * Resource cache with strong references and explicit LRU eviction by number
+ * of entries and estimated size, unlike the default PDFBox cache based on
+ * soft references which are released by GC only under memory pressure. The
+ * size is estimated by length of strongly held streams, decoded images are
+ * kept by PDFBox behind soft references and they are not counted.
+ */
+public final class BoundedResourceCache implements ResourceCache {
+
+    public static final class Statistics {
+
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final int entries;
+        public final long estimatedBytes;
+
+        private Statistics(final long hits, final long misses, final long evictions, final int entries, final long estimatedBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.estimatedBytes = estimatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "hits " + this.hits + ", misses " + this.misses + ", evictions " + this.evictions
+                    + ", entries " + this.entries + ", estimated " + (this.estimatedBytes / 1024L) + " KB";
+        }
+    }
+
+    private enum Kind {
+        FONT, COLOR_SPACE, EXT_GSTATE, SHADING, PATTERN, PROPERTIES, XOBJECT
+    }
+
+    private static final class Key {
+
+        private final Kind kind;
+        private final COSObject object;
+
+        private Key(final Kind kind, final COSObject object) {
+            this.kind = kind;
+            this.object = object;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.kind.hashCode() * 31 + System.identityHashCode(this.object);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj instanceof Key) {
+                final Key that = (Key) obj;
+                return this.kind == that.kind && this.object == that.object;
+            }
+            return false;
+        }
+    }
+
+    private static final class Entry {
+
+        private final Object value;
+        private final long size;
+
+        private Entry(final Object value, final long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    public static final int DEFAULT_MAX_ENTRIES = 2000;
+    public static final int DEFAULT_MAX_MB = 128;
+
+    private static final long DEFAULT_ENTRY_SIZE = 1024L;
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final int maxEntries;
+    private final long maxBytes;
+    private long currentBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public BoundedResourceCache(final int maxEntries, final long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized Statistics getStatistics() {
+        return new Statistics(this.hits, this.misses, this.evictions, this.entries.size(), this.currentBytes);
+    }
+
+    @Override
+    public PDFont getFont(final COSObject indirect) {
+        return (PDFont) this.get(Kind.FONT, indirect);
+    }
+
+    @Override
+    public PDColorSpace getColorSpace(final COSObject indirect) {
+        return (PDColorSpace) this.get(Kind.COLOR_SPACE, indirect);
+    }
+
+    @Override
+    public PDExtendedGraphicsState getExtGState(final COSObject indirect) {
+        return (PDExtendedGraphicsState) this.get(Kind.EXT_GSTATE, indirect);
+    }
+
+    @Override
+    public PDShading getShading(final COSObject indirect) {
+        return (PDShading) this.get(Kind.SHADING, indirect);
+    }
+
+    @Override
+    public PDAbstractPattern getPattern(final COSObject indirect) {
+        return (PDAbstractPattern) this.get(Kind.PATTERN, indirect);
+    }
+
+    @Override
+    public PDPropertyList getProperties(final COSObject indirect) {
+        return (PDPropertyList) this.get(Kind.PROPERTIES, indirect);
+    }
+
+    @Override
+    public PDXObject getXObject(final COSObject indirect) {
+        return (PDXObject) this.get(Kind.XOBJECT, indirect);
+    }
+
+    @Override
+    public void put(final COSObject indirect, final PDFont font) {
+        this.put(Kind.FONT, indirect, font, estimateFontSize(font));
+    }
+
+    @Override
+    public void put(final COSObject indirect, final PDColorSpace colorSpace) {
+        this.put(Kind.COLOR_SPACE, indirect, colorSpace, DEFAULT_ENTRY_SIZE);
+    }
+
+    @Override
+    public void put(final COSObject indirect, final PDExtendedGraphicsState extGState) {
+        this.put(Kind.EXT_GSTATE, indirect, extGState, DEFAULT_ENTRY_SIZE);
+    }
+
+    @Override
+    public void put(final COSObject indirect, final PDShading shading) {
+        this.put(Kind.SHADING, indirect, shading, DEFAULT_ENTRY_SIZE);
+    }
+
+    @Override
+    public void put(final COSObject indirect, final PDAbstractPattern pattern) {
+        this.put(Kind.PATTERN, indirect, pattern, DEFAULT_ENTRY_SIZE);
+    }
+
+    @Override
+    public void put(final COSObject indirect, final PDPropertyList propertyList) {
+        this.put(Kind.PROPERTIES, indirect, propertyList, DEFAULT_ENTRY_SIZE);
+    }
+
+    @Override
+    public void put(final COSObject indirect, final PDXObject xobject) {
+        // decoded image is kept by the image object only through soft reference,
+        // so only the stream is strongly held by the cache
+        this.put(Kind.XOBJECT, indirect, xobject, estimateStreamSize(xobject.getCOSObject()));
+    }
+
+    @Override
+    public PDColorSpace removeColorSpace(final COSObject indirect) {
+        return (PDColorSpace) this.remove(Kind.COLOR_SPACE, indirect);
+    }
+
+    @Override
+    public PDExtendedGraphicsState removeExtState(final COSObject indirect) {
+        return (PDExtendedGraphicsState) this.remove(Kind.EXT_GSTATE, indirect);
+    }
+
+    @Override
+    public PDFont removeFont(final COSObject indirect) {
+        return (PDFont) this.remove(Kind.FONT, indirect);
+    }
+
+    @Override
+    public PDShading removeShading(final COSObject indirect) {
+        return (PDShading) this.remove(Kind.SHADING, indirect);
+    }
+
+    @Override
+    public PDAbstractPattern removePattern(final COSObject indirect) {
+        return (PDAbstractPattern) this.remove(Kind.PATTERN, indirect);
+    }
+
+    @Override
+    public PDPropertyList removeProperties(final COSObject indirect) {
+        return (PDPropertyList) this.remove(Kind.PROPERTIES, indirect);
+    }
+
+    @Override
+    public PDXObject removeXObject(final COSObject indirect) {
+        return (PDXObject) this.remove(Kind.XOBJECT, indirect);
+    }
+
+    private synchronized Object get(final Kind kind, final COSObject indirect) {
+        final Entry entry = this.entries.get(new Key(kind, indirect));
+        if (entry == null) {
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        return entry.value;
+    }
+
+    private synchronized void put(final Kind kind, final COSObject indirect, final Object value, final long size) {
+        final Entry previous = this.entries.put(new Key(kind, indirect), new Entry(value, size));
+        if (previous != null) {
+            this.currentBytes -= previous.size;
+        }
+        this.currentBytes += size;
+
+        final Iterator<Entry> iterator = this.entries.values().iterator();
+        while (iterator.hasNext() && this.entries.size() > 1
+                && (this.entries.size() > this.maxEntries || this.currentBytes > this.maxBytes)) {
+            this.currentBytes -= iterator.next().size;
+            iterator.remove();
+            this.evictions++;
+        }
+    }
+
+    private synchronized Object remove(final Kind kind, final COSObject indirect) {
+        final Entry entry = this.entries.remove(new Key(kind, indirect));
+        if (entry == null) {
+            return null;
+        }
+        this.currentBytes -= entry.size;
+        return entry.value;
+    }
+
+    private static long estimateFontSize(final PDFont font) {
+        final PDFontDescriptor descriptor = font.getFontDescriptor();
+        if (descriptor == null) {
+            return DEFAULT_ENTRY_SIZE;
+        }
+        PDStream fontFile = descriptor.getFontFile();
+        if (fontFile == null) {
+            fontFile = descriptor.getFontFile2();
+        }
+        if (fontFile == null) {
+            fontFile = descriptor.getFontFile3();
+        }
+        return estimateStreamSize(fontFile == null ? null : fontFile.getCOSObject());
+    }
+
+    private static long estimateStreamSize(final COSBase base) {
+        return base instanceof COSStream ? Math.max(DEFAULT_ENTRY_SIZE, ((COSStream) base).getLength()) : DEFAULT_ENTRY_SIZE;
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import com.igormaznitsa.pdfimgremover.ImageFinderStreamEngine.FormInvocation;
+import com.igormaznitsa.pdfimgremover.ImageFinderStreamEngine.FoundImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.pdfbox.contentstream.PDContentStream;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorName;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdfwriter.ContentStreamWriter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentCatalog;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.optionalcontent.PDOptionalContentGroup;
+import org.apache.pdfbox.pdmodel.graphics.optionalcontent.PDOptionalContentProperties;
+
+/**
+ * Collects XObject invocations to be removed from page and form content
+ * streams or to be wrapped into hidden optional content, and rewrites every
+ * affected content stream only once. A form can be shared by pages, so if not
+ * all pages are processed then every affected form is copied for the page
+ * which draws it, the page gets its own resources pointing to the copies and
+ * other pages keep the original form.
+ */
+public final class ContentStreamRewriter {
+
+    public static final String HIDDEN_IMAGES_GROUP = "Hidden images";
+
+    private static final class StreamTargets {
+
+        private final PDContentStream contentStream;
+        // targets of the stream drawing the form copied for page, null for page and shared form
+        private final StreamTargets parent;
+        // name of the copied form in resources of the parent
+        private final COSName name;
+        private PDResources resources;
+        private final Set<COSName> removeNames = new HashSet<>();
+        private final Set<COSName> hideNames = new HashSet<>();
+        private COSName propertyName;
+        // own resources of page or resources of form copy, null until made
+        private PDResources ownResources;
+        private COSStream copy;
+        // invocations of form shared by all pages, their entries get the rewritten form
+        private final List<FormInvocation> references = new ArrayList<>();
+
+        private StreamTargets(final PDContentStream contentStream, final StreamTargets parent, final COSName name) {
+            this.contentStream = contentStream;
+            this.parent = parent;
+            this.name = name;
+        }
+
+        private boolean hasNames() {
+            return !this.removeNames.isEmpty() || !this.hideNames.isEmpty();
+        }
+    }
+
+    private final PDDocument document;
+    private final boolean allPages;
+    private final Map<List<Object>, StreamTargets> targets = new LinkedHashMap<>();
+    private PDOptionalContentGroup hiddenGroup;
+
+    /**
+     * Constructor.
+     *
+     * @param document document to be changed
+     * @param allPages true if invocations are collected from all pages of the
+     * document, so shared forms can be rewritten for all pages, false if forms
+     * must be copied for processed pages
+     */
+    public ContentStreamRewriter(final PDDocument document, final boolean allPages) {
+        this.document = document;
+        this.allPages = allPages;
+    }
+
+    public void addRemoval(final FoundImage foundImage) {
+        this.findTargets(foundImage).removeNames.add(foundImage.name);
+    }
+
+    /**
+     * Register invocation to be wrapped into marked content of the hidden
+     * images optional content group, the group will be registered as a
+     * property in resources of the image during rewrite.
+     *
+     * @param foundImage found invocation of image
+     */
+    public void addOptionalContent(final FoundImage foundImage) {
+        final StreamTargets streamTargets = this.findTargets(foundImage);
+        streamTargets.resources = foundImage.resources;
+        streamTargets.hideNames.add(foundImage.name);
+    }
+
+    public boolean isEmpty() {
+        return this.targets.isEmpty();
+    }
+
+    /**
+     * Drop all registered invocations, the document is not changed until
+     * rewrite.
+     */
+    public void clear() {
+        this.targets.clear();
+    }
+
+    /**
+     * Rewrite all registered content streams.
+     *
+     * @param changes list to collect made changes for undo, must not be null
+     * @return number of removed or wrapped Do operators
+     * @throws IOException if any content stream can't be parsed or written
+     */
+    public int rewrite(final List<DocumentChange> changes) throws IOException {
+        int changed = 0;
+        // forms are copied before pages because copies change resources of pages
+        for (final StreamTargets t : this.targets.values()) {
+            if (t.parent != null && t.hasNames()) {
+                changed += this.rewrite(t, changes);
+            }
+        }
+        for (final StreamTargets t : this.targets.values()) {
+            if (t.parent == null && t.hasNames()) {
+                changed += this.rewrite(t, changes);
+            }
+        }
+        this.targets.clear();
+        return changed;
+    }
+
+    private int rewrite(final StreamTargets t, final List<DocumentChange> changes) throws IOException {
+        if (t.parent != null) {
+            this.makeCopy(t, changes);
+        }
+        if (!t.hideNames.isEmpty() && t.propertyName == null) {
+            t.propertyName = this.addHiddenGroupProperty(this.getEffectiveResources(t), changes);
+        }
+        final List<Object> tokens;
+        final PDFStreamParser parser = new PDFStreamParser(t.contentStream);
+        try {
+            tokens = parser.parse();
+        } finally {
+            parser.close();
+        }
+
+        final List<Object> result = new ArrayList<>(tokens.size());
+        final int changedInStream = processInvocations(tokens, t, result);
+        if (changedInStream > 0) {
+            if (t.copy == null) {
+                this.writeTokens(t, result, changes);
+            } else {
+                // the copy is a new object, so its data is not recorded
+                writeData(t.copy, result);
+            }
+        }
+        return changedInStream;
+    }
+
+    private StreamTargets findTargets(final FoundImage foundImage) {
+        if (foundImage.forms.isEmpty()) {
+            return this.findTargets(List.of(getKey(foundImage.contentStream)), foundImage.contentStream, null, null);
+        }
+        if (this.allPages) {
+            final StreamTargets result = this.findTargets(List.of(getKey(foundImage.contentStream)), foundImage.contentStream, null, null);
+            final FormInvocation form = foundImage.forms.get(foundImage.forms.size() - 1);
+            if (result.references.stream().noneMatch(x -> x.resources.getCOSObject() == form.resources.getCOSObject() && x.name.equals(form.name))) {
+                result.references.add(form);
+            }
+            return result;
+        }
+        // every path from page to form gets its own copy of the form
+        final PDContentStream page = foundImage.forms.get(0).contentStream;
+        final List<Object> key = new ArrayList<>();
+        key.add(getKey(page));
+        StreamTargets result = this.findTargets(List.copyOf(key), page, null, null);
+        for (final FormInvocation form : foundImage.forms) {
+            key.add(form.name);
+            key.add(form.form.getCOSObject());
+            result = this.findTargets(List.copyOf(key), form.form, result, form.name);
+        }
+        return result;
+    }
+
+    private StreamTargets findTargets(final List<Object> key, final PDContentStream contentStream, final StreamTargets parent, final COSName name) {
+        return this.targets.computeIfAbsent(key, k -> new StreamTargets(contentStream, parent, name));
+    }
+
+    /**
+     * Get resources where the content stream finds its XObjects, own
+     * resources of page or form copy are used if they are made.
+     */
+    private PDResources getEffectiveResources(final StreamTargets t) {
+        if (t.ownResources != null) {
+            return t.ownResources;
+        }
+        if (t.parent != null && t.copy != null) {
+            // form without resources uses resources of its parent
+            return this.getEffectiveResources(t.parent);
+        }
+        return t.resources == null ? t.contentStream.getResources() : t.resources;
+    }
+
+    /**
+     * Make copy of the form and all forms drawing it up to the page, the page
+     * gets its own resources which point to the copy. Only change of the
+     * page resources entry is recorded, other changes are made in new
+     * objects.
+     */
+    private void makeCopy(final StreamTargets t, final List<DocumentChange> changes) throws IOException {
+        if (t.copy != null) {
+            return;
+        }
+        final StreamTargets parent = t.parent;
+        if (parent.parent == null) {
+            this.makePageResources(parent, changes);
+        } else {
+            this.makeCopy(parent, changes);
+        }
+
+        final COSStream form = ((PDFormXObject) t.contentStream).getCOSObject();
+        final COSStream copy = this.copyForm(form);
+        try (InputStream in = form.createRawInputStream(); OutputStream out = copy.createRawOutputStream()) {
+            in.transferTo(out);
+        }
+        final COSDictionary resources = form.getCOSDictionary(COSName.RESOURCES);
+        if (resources != null) {
+            final COSDictionary resourcesCopy = copyResources(resources);
+            copy.setItem(COSName.RESOURCES, resourcesCopy);
+            t.ownResources = new PDResources(resourcesCopy, this.document.getResourceCache());
+        }
+        t.copy = copy;
+
+        final COSDictionary xobjects = this.getEffectiveResources(parent).getCOSObject().getCOSDictionary(COSName.XOBJECT);
+        if (xobjects == null) {
+            throw new IOException("Can't find XObject resources of form " + t.name.getName());
+        }
+        xobjects.setItem(t.name, copy);
+    }
+
+    private COSStream copyForm(final COSStream form) {
+        final COSStream copy = this.document.getDocument().createCOSStream();
+        copy.addAll(form);
+        copy.removeItem(COSName.LENGTH);
+        return copy;
+    }
+
+    private void makePageResources(final StreamTargets page, final List<DocumentChange> changes) {
+        if (page.ownResources == null) {
+            // resources can be inherited or shared with other pages
+            final COSDictionary resourcesCopy = copyResources(page.contentStream.getResources().getCOSObject());
+            changes.add(DictionaryEntryChange.setItem(((PDPage) page.contentStream).getCOSObject(), COSName.RESOURCES, resourcesCopy));
+            page.ownResources = new PDResources(resourcesCopy, this.document.getResourceCache());
+        }
+    }
+
+    /**
+     * Make shallow copy of resources with own XObject dictionary, so entries
+     * of the copy can be changed without change of the original.
+     */
+    private static COSDictionary copyResources(final COSDictionary resources) {
+        final COSDictionary result = new COSDictionary();
+        result.addAll(resources);
+        final COSDictionary xobjects = resources.getCOSDictionary(COSName.XOBJECT);
+        if (xobjects != null) {
+            final COSDictionary xobjectsCopy = new COSDictionary();
+            xobjectsCopy.addAll(xobjects);
+            result.setItem(COSName.XOBJECT, xobjectsCopy);
+        }
+        return result;
+    }
+
+    private COSName addHiddenGroupProperty(final PDResources resources, final List<DocumentChange> changes) {
+        final PDOptionalContentGroup group = this.getHiddenGroup(changes);
+        final COSDictionary resourcesDictionary = resources.getCOSObject();
+        final COSDictionary properties = resourcesDictionary.getCOSDictionary(COSName.PROPERTIES);
+        if (properties == null) {
+            final COSBase oldValue = resourcesDictionary.getItem(COSName.PROPERTIES);
+            final COSName name = resources.add(group);
+            changes.add(DictionaryEntryChange.made(resourcesDictionary, COSName.PROPERTIES, oldValue));
+            return name;
+        } else {
+            final int size = properties.size();
+            final COSName name = resources.add(group);
+            // existing entry of the group is reused by resources
+            if (properties.size() != size) {
+                changes.add(DictionaryEntryChange.made(properties, name, null));
+            }
+            return name;
+        }
+    }
+
+    /**
+     * Find or create hidden images group. Creation of optional content
+     * properties, raise of the catalog version and switching off the group
+     * are recorded as changes, the group added into existing properties stays
+     * in the document after undo but it is not used by content.
+     */
+    private PDOptionalContentGroup getHiddenGroup(final List<DocumentChange> changes) {
+        if (this.hiddenGroup == null) {
+            final PDDocumentCatalog catalog = this.document.getDocumentCatalog();
+            PDOptionalContentProperties properties = catalog.getOCProperties();
+            if (properties == null) {
+                properties = new PDOptionalContentProperties();
+                changes.add(DictionaryEntryChange.setItem(catalog.getCOSObject(), COSName.OCPROPERTIES, properties.getCOSObject()));
+            }
+            if (this.document.getVersion() < 1.5f) {
+                // optional content is supported since PDF 1.5
+                final COSBase oldVersion = catalog.getCOSObject().getItem(COSName.VERSION);
+                this.document.setVersion(1.5f);
+                changes.add(DictionaryEntryChange.made(catalog.getCOSObject(), COSName.VERSION, oldVersion));
+            }
+            PDOptionalContentGroup group = properties.getGroup(HIDDEN_IMAGES_GROUP);
+            if (group == null) {
+                group = new PDOptionalContentGroup(HIDDEN_IMAGES_GROUP);
+                properties.addGroup(group);
+            }
+            disableGroup(properties, group, changes);
+            this.hiddenGroup = group;
+        }
+        return this.hiddenGroup;
+    }
+
+    /**
+     * Switch off group in default configuration of properties. The ON and OFF
+     * arrays are changed in place by PDFBox, so they are replaced by copies
+     * through recorded changes first.
+     */
+    private static void disableGroup(final PDOptionalContentProperties properties, final PDOptionalContentGroup group, final List<DocumentChange> changes) {
+        COSDictionary defaultConfig = properties.getCOSObject().getCOSDictionary(COSName.D);
+        if (defaultConfig == null) {
+            defaultConfig = new COSDictionary();
+            changes.add(DictionaryEntryChange.setItem(properties.getCOSObject(), COSName.D, defaultConfig));
+        }
+        for (final COSName name : new COSName[]{COSName.ON, COSName.OFF}) {
+            final COSArray array = defaultConfig.getCOSArray(name);
+            final COSArray copy = new COSArray();
+            if (array != null) {
+                copy.addAll(array);
+            }
+            changes.add(DictionaryEntryChange.setItem(defaultConfig, name, copy));
+        }
+        properties.setGroupEnabled(group, false);
+    }
+
+    private static int processInvocations(final List<Object> tokens, final StreamTargets targets, final List<Object> result) {
+        int changed = 0;
+        int operandsStart = 0;
+        for (final Object token : tokens) {
+            result.add(token);
+            if (token instanceof Operator) {
+                final Operator operator = (Operator) token;
+                final int operands = result.size() - 1 - operandsStart;
+                if (OperatorName.DRAW_OBJECT.equals(operator.getName()) && operands == 1) {
+                    final Object name = result.get(operandsStart);
+                    if (targets.removeNames.contains(name)) {
+                        result.subList(operandsStart, result.size()).clear();
+                        changed++;
+                    } else if (targets.hideNames.contains(name) && !isWrapped(result, operandsStart, targets.propertyName)) {
+                        result.add(operandsStart, COSName.OC);
+                        result.add(operandsStart + 1, targets.propertyName);
+                        result.add(operandsStart + 2, Operator.getOperator(OperatorName.BEGIN_MARKED_CONTENT_SEQ));
+                        result.add(Operator.getOperator(OperatorName.END_MARKED_CONTENT));
+                        changed++;
+                    }
+                }
+                operandsStart = result.size();
+            }
+        }
+        return changed;
+    }
+
+    private static boolean isWrapped(final List<Object> result, final int operandsStart, final COSName propertyName) {
+        return operandsStart >= 3
+                && COSName.OC.equals(result.get(operandsStart - 3))
+                && propertyName.equals(result.get(operandsStart - 2))
+                && result.get(operandsStart - 1) instanceof Operator
+                && OperatorName.BEGIN_MARKED_CONTENT_SEQ.equals(((Operator) result.get(operandsStart - 1)).getName());
+    }
+
+    private void writeTokens(final StreamTargets t, final List<Object> tokens, final List<DocumentChange> changes) throws IOException {
+        if (t.contentStream instanceof PDPage) {
+            final PDStream newContents = new PDStream(this.document);
+            try (OutputStream out = newContents.createOutputStream(COSName.FLATE_DECODE)) {
+                new ContentStreamWriter(out).writeTokens(tokens);
+            }
+            // page gets new contents stream, so only the entry is changed
+            changes.add(DictionaryEntryChange.setItem(((PDPage) t.contentStream).getCOSObject(), COSName.CONTENTS, newContents.getCOSObject()));
+        } else if (t.contentStream instanceof PDFormXObject) {
+            // form is shared by all pages, so all entries drawing it get new form with the same resources
+            final COSStream newForm = this.copyForm(((PDFormXObject) t.contentStream).getCOSObject());
+            writeData(newForm, tokens);
+            for (final FormInvocation reference : t.references) {
+                final COSDictionary xobjects = reference.resources.getCOSObject().getCOSDictionary(COSName.XOBJECT);
+                if (xobjects == null) {
+                    throw new IOException("Can't find XObject resources of form " + reference.name.getName());
+                }
+                changes.add(DictionaryEntryChange.setItem(xobjects, reference.name, newForm));
+            }
+        } else {
+            throw new IOException("Unsupported content stream: " + t.contentStream);
+        }
+    }
+
+    private static void writeData(final COSStream stream, final List<Object> tokens) throws IOException {
+        stream.removeItem(COSName.DECODE_PARMS);
+        try (OutputStream out = stream.createOutputStream(COSName.FLATE_DECODE)) {
+            new ContentStreamWriter(out).writeTokens(tokens);
+        }
+    }
+
+    private static COSBase getKey(final PDContentStream contentStream) {
+        if (contentStream instanceof PDPage) {
+            return ((PDPage) contentStream).getCOSObject();
+        } else if (contentStream instanceof PDFormXObject) {
+            return ((PDFormXObject) contentStream).getCOSObject();
+        } else {
+            throw new IllegalArgumentException("Unsupported content stream: " + contentStream);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+
+/**
+ * Change of one entry of a dictionary. Old and new values are kept as they
+ * are stored in the dictionary (references are not resolved), so the change
+ * can be reverted and applied again.
+ */
+public final class DictionaryEntryChange implements DocumentChange {
+
+    private final COSDictionary dictionary;
+    private final COSName name;
+    private final COSBase oldValue;
+    private final COSBase newValue;
+
+    private DictionaryEntryChange(final COSDictionary dictionary, final COSName name, final COSBase oldValue, final COSBase newValue) {
+        this.dictionary = dictionary;
+        this.name = name;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+
+    /**
+     * Record already made change of entry, the current value of the entry is
+     * used as the new value.
+     *
+     * @param dictionary changed dictionary
+     * @param name name of entry
+     * @param oldValue value of the entry before change, can be null
+     * @return made change
+     */
+    public static DictionaryEntryChange made(final COSDictionary dictionary, final COSName name, final COSBase oldValue) {
+        return new DictionaryEntryChange(dictionary, name, oldValue, dictionary.getItem(name));
+    }
+
+    /**
+     * Set entry of dictionary and record the change.
+     *
+     * @param dictionary dictionary to be changed
+     * @param name name of entry
+     * @param value new value, null to remove the entry
+     * @return made change
+     */
+    public static DictionaryEntryChange setItem(final COSDictionary dictionary, final COSName name, final COSBase value) {
+        final COSBase oldValue = dictionary.getItem(name);
+        dictionary.setItem(name, value);
+        return made(dictionary, name, oldValue);
+    }
+
+    /**
+     * Replace XObject in resources and record the change.
+     *
+     * @param resources resources to be changed
+     * @param name name of XObject
+     * @param value new XObject
+     * @return made change
+     */
+    public static DictionaryEntryChange replaceXObject(final PDResources resources, final COSName name, final PDXObject value) {
+        COSDictionary xobjects = resources.getCOSObject().getCOSDictionary(COSName.XOBJECT);
+        if (xobjects == null) {
+            resources.put(name, value);
+            xobjects = resources.getCOSObject().getCOSDictionary(COSName.XOBJECT);
+            return made(xobjects, name, null);
+        }
+        final COSBase oldValue = xobjects.getItem(name);
+        resources.put(name, value);
+        return made(xobjects, name, oldValue);
+    }
+
+    public COSDictionary getDictionary() {
+        return this.dictionary;
+    }
+
+    public COSName getName() {
+        return this.name;
+    }
+
+    public COSBase getOldValue() {
+        return this.oldValue;
+    }
+
+    public COSBase getNewValue() {
+        return this.newValue;
+    }
+
+    /**
+     * Restore old value of the entry.
+     */
+    @Override
+    public void revert() {
+        this.dictionary.setItem(this.name, this.oldValue);
+    }
+
+    /**
+     * Set new value of the entry again.
+     */
+    @Override
+    public void apply() {
+        this.dictionary.setItem(this.name, this.newValue);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.io.IOException;
+
+/**
+ * Reversible change of a document. A change keeps only the changed values,
+ * so it can be reverted and applied again without copy of the document.
+ * Objects touched by a change are marked in change tracker when the change
+ * is made, the tracker keeps them until reload of the document, so revert and
+ * apply don't mark them again.
+ */
+public interface DocumentChange {
+
+    /**
+     * Restore state of the document before the change.
+     *
+     * @throws IOException if the state can't be restored
+     */
+    void revert() throws IOException;
+
+    /**
+     * Make the change again after revert.
+     *
+     * @throws IOException if the change can't be made
+     */
+    void apply() throws IOException;
+}
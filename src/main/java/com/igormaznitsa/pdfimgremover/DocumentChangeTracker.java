@@ -0,0 +1,172 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import org.apache.pdfbox.contentstream.PDContentStream;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSDocument;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSObjectKey;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.COSObjectable;
+
+/**
+ * Collects COS objects changed since document load, they are the only
+ * objects which should be appended to the original file bytes during
+ * incremental save.
+ */
+public final class DocumentChangeTracker {
+
+    private static final int MAX_TREE_DEPTH = 64;
+
+    private final Set<COSDictionary> changedObjects = Collections.newSetFromMap(new IdentityHashMap<>());
+    private String fullSaveReason;
+
+    public synchronized void reset() {
+        this.changedObjects.clear();
+        this.fullSaveReason = null;
+    }
+
+    public synchronized void markChanged(final COSBase object) {
+        final COSBase base = object instanceof COSObject ? ((COSObject) object).getObject() : object;
+        if (base instanceof COSDictionary) {
+            final COSDictionary dictionary = (COSDictionary) base;
+            dictionary.setNeedToBeUpdated(true);
+            this.changedObjects.add(dictionary);
+        }
+    }
+
+    /**
+     * Mark resources dictionary as changed together with its XObject and
+     * Properties sub-dictionaries and the object owning the resources, because
+     * any of them can be a direct object which is written only as part of its
+     * indirect container. Page resources can be inherited from a node of
+     * the page tree, the node holding them is marked too. If a form uses
+     * resources of its parent then their holder is unknown, so full save is
+     * required.
+     *
+     * @param resources changed resources
+     * @param owner content stream which uses the resources, can be null
+     */
+    public synchronized void markResourcesChanged(final PDResources resources, final PDContentStream owner) {
+        final COSDictionary dictionary = resources.getCOSObject();
+        this.markChanged(dictionary);
+        this.markChanged(dictionary.getDictionaryObject(COSName.XOBJECT));
+        this.markChanged(dictionary.getDictionaryObject(COSName.PROPERTIES));
+        if (owner instanceof COSObjectable) {
+            final COSDictionary ownerDictionary = ((COSObjectable) owner).getCOSObject() instanceof COSDictionary
+                    ? (COSDictionary) ((COSObjectable) owner).getCOSObject() : null;
+            this.markChanged(ownerDictionary);
+            if (owner instanceof PDPage) {
+                this.markResourcesHolder(ownerDictionary, dictionary);
+            } else if (ownerDictionary != null && ownerDictionary.getDictionaryObject(COSName.RESOURCES) != dictionary) {
+                this.requireFullSave("changed resources are inherited by form from unknown holder");
+            }
+        }
+    }
+
+    private void markResourcesHolder(final COSDictionary page, final COSDictionary resources) {
+        COSDictionary node = page;
+        for (int depth = 0; node != null && depth < MAX_TREE_DEPTH; depth++) {
+            final COSBase item = node.getItem(COSName.RESOURCES);
+            if (item != null) {
+                // direct resources dictionary is written only as part of its holder
+                if (item == resources) {
+                    this.markChanged(node);
+                }
+                return;
+            }
+            node = node.getCOSDictionary(COSName.PARENT);
+        }
+        this.requireFullSave("holder of changed page resources is not found");
+    }
+
+    /**
+     * Notify that document was changed in way which can't be saved
+     * incrementally.
+     *
+     * @param reason text description of the reason, must not be null
+     */
+    public synchronized void requireFullSave(final String reason) {
+        if (this.fullSaveReason == null) {
+            this.fullSaveReason = reason;
+        }
+    }
+
+    public synchronized String getFullSaveReason() {
+        return this.fullSaveReason;
+    }
+
+    public synchronized boolean isIncrementalSavePossible() {
+        return this.fullSaveReason == null;
+    }
+
+    public synchronized Set<COSDictionary> getChangedObjects() {
+        final Set<COSDictionary> result = Collections.newSetFromMap(new IdentityHashMap<>());
+        result.addAll(this.changedObjects);
+        return result;
+    }
+
+    /**
+     * Append only tracked objects and new objects referenced by them to the
+     * original document bytes. PDFBox marks objects as updated even if the
+     * same value is set again (for instance Type and Subtype of every loaded
+     * XObject), so update state of all other loaded objects is reset before
+     * write.
+     *
+     * @param document document loaded from file or stream, must not be null
+     * @param out target stream, must not be null
+     * @throws IOException if document can't be written
+     */
+    public synchronized void saveIncremental(final PDDocument document, final OutputStream out) throws IOException {
+        final COSDocument cosDocument = document.getDocument();
+        final Set<COSBase> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (final COSObjectKey key : cosDocument.getXrefTable().keySet()) {
+            final COSObject object = cosDocument.getObjectFromPool(key);
+            if (object.isDereferenced()) {
+                this.resetUpdateState(object.getObject(), visited);
+            }
+        }
+        document.saveIncremental(out, this.getChangedObjects());
+    }
+
+    private void resetUpdateState(final COSBase base, final Set<COSBase> visited) {
+        if (base instanceof COSObject || base == null || !visited.add(base)) {
+            return;
+        }
+        if (base instanceof COSDictionary) {
+            final COSDictionary dictionary = (COSDictionary) base;
+            if (!this.changedObjects.contains(dictionary)) {
+                dictionary.setNeedToBeUpdated(false);
+            }
+            dictionary.getValues().forEach(x -> this.resetUpdateState(x, visited));
+        } else if (base instanceof COSArray) {
+            final COSArray array = (COSArray) base;
+            array.setNeedToBeUpdated(false);
+            array.forEach(x -> this.resetUpdateState(x, visited));
+        }
+    }
+}
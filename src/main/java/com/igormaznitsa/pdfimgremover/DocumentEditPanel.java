@@ -15,26 +15,25 @@
  */
 package com.igormaznitsa.pdfimgremover;
 
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
 import java.awt.Toolkit;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.Transferable;
 import java.awt.datatransfer.UnsupportedFlavorException;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
-import java.util.Optional;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Stream;
+import java.util.concurrent.ExecutionException;
 import javax.swing.AbstractListModel;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.DefaultListModel;
 import javax.swing.DropMode;
+import javax.swing.Icon;
 import javax.swing.ImageIcon;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
@@ -43,8 +42,11 @@ import javax.swing.JOptionPane;
 import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import static javax.swing.ListSelectionModel.MULTIPLE_INTERVAL_SELECTION;
+import javax.swing.SwingWorker;
 import javax.swing.TransferHandler;
-import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDDocumentInformation;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -52,85 +54,171 @@ import org.apache.pdfbox.rendering.PDFRenderer;
 
 public class DocumentEditPanel extends javax.swing.JPanel {
 
+    /**
+     * List model keeping original page indexes in a primitive array, all
+     * batch operations are linear and fire interval events only for really
+     * changed rows.
+     */
     private static final class PdfPageListModel extends AbstractListModel<PdfPageItem> {
 
-        private final List<PdfPageItem> list = new ArrayList<>();
+        private int[] pages = new int[16];
+        private int size;
         private final boolean sorted;
-        
+
         public PdfPageListModel(final boolean sorted) {
             this.sorted = sorted;
         }
 
-        public Stream<PdfPageItem> stream() {
-            return this.list.stream();
+        public int[] getPageIndexes() {
+            return Arrays.copyOf(this.pages, this.size);
+        }
+
+        public int getPageIndex(final int index) {
+            if (index < 0 || index >= this.size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + this.size);
+            }
+            return this.pages[index];
         }
 
         public boolean moveUp(final int index) {
-            if (index <= 0) {
+            if (index <= 0 || index >= this.size) {
                 return false;
             }
-            final PdfPageItem a = this.list.remove(index);
-            this.list.add(index - 1, a);
+            this.swap(index - 1, index);
             this.fireContentsChanged(this, index - 1, index);
             return true;
         }
 
         public boolean moveDown(final int index) {
-            if (index >= this.list.size() - 1) {
+            if (index < 0 || index >= this.size - 1) {
                 return false;
             }
-            final PdfPageItem a = this.list.remove(index);
-            this.list.add(index + 1, a);
+            this.swap(index, index + 1);
             this.fireContentsChanged(this, index, index + 1);
             return true;
         }
 
-        public void removeAll(final Collection<PdfPageItem> items) {
-            this.list.removeAll(items);
-            this.fireContentsChanged(this, 0, list.size() - 1);
+        private void swap(final int a, final int b) {
+            final int temp = this.pages[a];
+            this.pages[a] = this.pages[b];
+            this.pages[b] = temp;
         }
 
-        public void add(final PdfPageItem page) {
-            this.list.add(page);
-            if (this.sorted) {
-                Collections.sort(this.list);
-                this.fireContentsChanged(this, 0, list.size() - 1);
-            } else {
-                this.fireContentsChanged(this, list.size() - 1, list.size() - 1);
+        /**
+         * Remove rows in single compaction pass.
+         *
+         * @param rowIndexes row indexes sorted in ascending order
+         * @return page indexes of removed rows in row order
+         */
+        public int[] removeRows(final int[] rowIndexes) {
+            final int[] removed = new int[rowIndexes.length];
+            if (rowIndexes.length == 0) {
+                return removed;
+            }
+            int write = rowIndexes[0];
+            int next = 0;
+            for (int read = rowIndexes[0]; read < this.size; read++) {
+                if (next < rowIndexes.length && rowIndexes[next] == read) {
+                    removed[next++] = this.pages[read];
+                } else {
+                    this.pages[write++] = this.pages[read];
+                }
+            }
+            this.size = write;
+
+            // fire runs from the end, so that indexes of not notified runs are still valid
+            int runEnd = rowIndexes.length - 1;
+            for (int i = rowIndexes.length - 1; i >= 0; i--) {
+                if (i == 0 || rowIndexes[i - 1] != rowIndexes[i] - 1) {
+                    this.fireIntervalRemoved(this, rowIndexes[i], rowIndexes[runEnd]);
+                    runEnd = i - 1;
+                }
             }
+            return removed;
         }
 
-        public void add(final Collection<PdfPageItem> pages) {
-            this.list.addAll(pages);
-            if (this.sorted) {
-                Collections.sort(this.list);
+        /**
+         * Add pages, sorted model merges them into their positions, unsorted
+         * one appends them to the end.
+         *
+         * @param pageIndexes page indexes to be added
+         */
+        public void addPages(final int[] pageIndexes) {
+            if (pageIndexes.length == 0) {
+                return;
+            }
+            this.ensureCapacity(this.size + pageIndexes.length);
+            if (!this.sorted) {
+                System.arraycopy(pageIndexes, 0, this.pages, this.size, pageIndexes.length);
+                this.size += pageIndexes.length;
+                this.fireIntervalAdded(this, this.size - pageIndexes.length, this.size - 1);
+                return;
+            }
+
+            final int[] added = pageIndexes.clone();
+            Arrays.sort(added);
+            final boolean[] addedRows = new boolean[this.size + added.length];
+
+            // merge from the end inside of the same array
+            int old = this.size - 1;
+            int add = added.length - 1;
+            for (int write = this.size + added.length - 1; add >= 0; write--) {
+                if (old >= 0 && this.pages[old] > added[add]) {
+                    this.pages[write] = this.pages[old--];
+                } else {
+                    this.pages[write] = added[add--];
+                    addedRows[write] = true;
+                }
+            }
+            this.size += added.length;
+
+            // fire runs in ascending order, so that each event is valid for already notified state
+            int runStart = -1;
+            for (int i = 0; i <= this.size; i++) {
+                final boolean addedRow = i < this.size && addedRows[i];
+                if (addedRow && runStart < 0) {
+                    runStart = i;
+                } else if (!addedRow && runStart >= 0) {
+                    this.fireIntervalAdded(this, runStart, i - 1);
+                    runStart = -1;
+                }
             }
-            this.fireContentsChanged(this, 0, list.size() - 1);
         }
 
-        @Override
-        public int getSize() {
-            return this.list.size();
+        /**
+         * Insert pages into position, allowed only for unsorted model.
+         *
+         * @param index row index to insert
+         * @param pageIndexes page indexes to be inserted
+         */
+        public void insertPages(final int index, final int[] pageIndexes) {
+            if (this.sorted) {
+                throw new IllegalStateException("Insert into sorted model");
+            }
+            if (pageIndexes.length == 0) {
+                return;
+            }
+            this.ensureCapacity(this.size + pageIndexes.length);
+            System.arraycopy(this.pages, index, this.pages, index + pageIndexes.length, this.size - index);
+            System.arraycopy(pageIndexes, 0, this.pages, index, pageIndexes.length);
+            this.size += pageIndexes.length;
+            this.fireIntervalAdded(this, index, index + pageIndexes.length - 1);
         }
 
-        @Override
-        public PdfPageItem getElementAt(int index) {
-            return this.list.get(index);
+        private void ensureCapacity(final int capacity) {
+            if (capacity > this.pages.length) {
+                this.pages = Arrays.copyOf(this.pages, Math.max(capacity, this.pages.length * 2));
+            }
         }
 
-        public void remove(int index) {
-            this.list.remove(index);
-            this.fireContentsChanged(this, index, index);
+        @Override
+        public int getSize() {
+            return this.size;
         }
 
-        public void add(int index, PdfPageItem item) {
-            this.list.add(index, item);
-            if (this.sorted) {
-                Collections.sort(this.list);
-                this.fireContentsChanged(this, index, index);
-            } else {
-                this.fireContentsChanged(this, index, index);
-            }
+        @Override
+        public PdfPageItem getElementAt(final int index) {
+            return new PdfPageItem(this.getPageIndex(index));
         }
 
     }
@@ -140,64 +228,145 @@ public class DocumentEditPanel extends javax.swing.JPanel {
         return text.isEmpty() ? null : text;
     }
 
-    public Optional<PDDocument> makeDocument() throws IOException {
-        if (this.listTargetPages.getModel().getSize() == 0) {
-            return Optional.empty();
-        }
-        
-        Stream.concat(((PdfPageListModel) this.listSourcePages.getModel()).stream(),
-                ((PdfPageListModel) this.listTargetPages.getModel()).stream())
-                .forEach(x -> this.document.removePage(x.page));
-        ((PdfPageListModel) this.listTargetPages.getModel()).stream().forEach(x -> {
-            this.document.addPage(x.page);
-        });
+    /**
+     * Put text into document information entry and record the change.
+     */
+    private static void setInfoEntry(final PDDocumentInformation info, final COSName name, final String value, final List<DocumentChange> changes) {
+        final COSDictionary dictionary = info.getCOSObject();
+        final COSBase oldValue = dictionary.getItem(name);
+        dictionary.setString(name, value);
+        changes.add(DictionaryEntryChange.made(dictionary, name, oldValue));
+    }
 
-        final PDDocumentInformation info = this.document.getDocumentInformation();
-        info.setAuthor(getTextOrNull(this.textDocumentAuthor));
-        info.setCreator(getTextOrNull(this.textDocumentCreator));
-        info.setKeywords(getTextOrNull(this.textKeywords));
-        info.setTitle(getTextOrNull(this.textTitle));
+    /**
+     * Get selected page order.
+     *
+     * @return indexes of pages of the original document in new order
+     */
+    public int[] getPageOrder() {
+        return ((PdfPageListModel) this.listTargetPages.getModel()).getPageIndexes();
+    }
 
-        return Optional.of(this.document);
+    /**
+     * Apply selected page order and document information to the document
+     * which was used to create the panel. The page tree is rebuilt in single
+     * pass keeping the original root node and page objects, so that the
+     * document can still be saved incrementally.
+     *
+     * @param target original document, must not be null
+     * @param tracker tracker to collect changed objects, must not be null
+     * @param changes list to collect made changes for undo, must not be null
+     * @return false if there is no selected page and nothing has been changed
+     */
+    public boolean applyTo(final PDDocument target, final DocumentChangeTracker tracker, final List<DocumentChange> changes) {
+        if (this.listTargetPages.getModel().getSize() == 0) {
+            return false;
+        }
+        applyTo(target, tracker, this.getPageOrder(), getTextOrNull(this.textDocumentAuthor), getTextOrNull(this.textDocumentCreator),
+                getTextOrNull(this.textKeywords), getTextOrNull(this.textTitle), changes);
+        return true;
     }
 
-    public void dispose() {
+    /**
+     * Apply page order and document information to document, used also to
+     * replay journaled changes.
+     *
+     * @param target document to be changed, must not be null
+     * @param tracker tracker to collect changed objects, must not be null
+     * @param order indexes of current pages in new order, must not be empty
+     * @param author new author, can be null
+     * @param creator new creator, can be null
+     * @param keywords new keywords, can be null
+     * @param title new title, can be null
+     * @param changes list to collect made changes for undo, must not be null
+     */
+    public static void applyTo(final PDDocument target, final DocumentChangeTracker tracker, final int[] order,
+            final String author, final String creator, final String keywords, final String title, final List<DocumentChange> changes) {
+        final List<PDPage> originalPages = new ArrayList<>(target.getNumberOfPages());
+        target.getPages().forEach(originalPages::add);
+
+        final List<PDPage> pages = new ArrayList<>(order.length);
+        for (final int index : order) {
+            pages.add(originalPages.get(index));
+        }
+        changes.add(PageOrderChange.rebuild(target, pages, tracker));
+
+        final PDDocumentInformation info = target.getDocumentInformation();
+        setInfoEntry(info, COSName.AUTHOR, author, changes);
+        setInfoEntry(info, COSName.CREATOR, creator, changes);
+        setInfoEntry(info, COSName.KEYWORDS, keywords, changes);
+        setInfoEntry(info, COSName.TITLE, title, changes);
+        tracker.markChanged(info.getCOSObject());
+    }
 
+    public void dispose() {
+        this.thumbnails.dispose();
     }
 
-    public static PDDocument cloneDocument(PDDocument sourceDoc, boolean clonePages) throws IOException {
-        if (!clonePages) {
-            PDDocument clonedDoc = new PDDocument();
-            if (sourceDoc.getDocumentInformation() != null) {
-                clonedDoc.setDocumentInformation(sourceDoc.getDocumentInformation());
-            }
-            if (sourceDoc.getDocumentCatalog().getLanguage() != null) {
-                clonedDoc.getDocumentCatalog().setLanguage(
-                        sourceDoc.getDocumentCatalog().getLanguage()
-                );
+    /**
+     * Icon of fixed size showing page preview or empty frame while the preview
+     * is not rendered yet.
+     */
+    private static final class ThumbnailIcon implements Icon {
+
+        private final int size;
+        private BufferedImage image;
+
+        private ThumbnailIcon(final int size) {
+            this.size = size;
+        }
+
+        @Override
+        public void paintIcon(final Component c, final Graphics g, final int x, final int y) {
+            final BufferedImage current = this.image;
+            if (current == null) {
+                g.setColor(Color.LIGHT_GRAY);
+                g.drawRect(x + this.size / 4, y + this.size / 8, this.size / 2 - 1, this.size * 3 / 4 - 1);
+            } else {
+                g.drawImage(current, x + (this.size - current.getWidth()) / 2, y + (this.size - current.getHeight()) / 2, null);
             }
+        }
 
-            return clonedDoc;
-        } else {
-            return deepCloneDocument(sourceDoc);
+        @Override
+        public int getIconWidth() {
+            return this.size;
+        }
+
+        @Override
+        public int getIconHeight() {
+            return this.size;
         }
     }
 
-    private static PDDocument deepCloneDocument(final PDDocument sourceDoc) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        sourceDoc.setAllSecurityToBeRemoved(true);
-        sourceDoc.save(baos);
-        return Loader.loadPDF(baos.toByteArray());
+    private final class PdfPageCellRenderer extends DefaultListCellRenderer {
+
+        private static final long serialVersionUID = 3287415802264139113L;
+
+        private final ThumbnailIcon icon = new ThumbnailIcon(thumbnails.getThumbnailSize());
+
+        private PdfPageCellRenderer() {
+            this.setHorizontalAlignment(CENTER);
+            this.setHorizontalTextPosition(CENTER);
+            this.setVerticalTextPosition(BOTTOM);
+        }
+
+        @Override
+        public Component getListCellRendererComponent(final JList<?> list, final Object value, final int index, final boolean isSelected, final boolean cellHasFocus) {
+            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            final int pageIndex = ((PdfPageItem) value).origIndex;
+            // JList calls renderer only for visible cells, so only they are queued for render
+            this.icon.image = index >= 0 && pageIndex < numberOfPages ? thumbnails.get(pageIndex) : null;
+            this.setIcon(this.icon);
+            return this;
+        }
     }
 
     private static class PdfPageItem implements Comparable<PdfPageItem> {
 
         private final int origIndex;
-        private final PDPage page;
 
-        public PdfPageItem(final int origIndex, final PDPage page) {
+        public PdfPageItem(final int origIndex) {
             this.origIndex = origIndex;
-            this.page = page;
         }
 
         @Override
@@ -227,40 +396,54 @@ public class DocumentEditPanel extends javax.swing.JPanel {
 
     private final PDDocument document;
     private final PDFRenderer renderer;
+    private final PageThumbnailCache thumbnails;
+    private final int numberOfPages;
 
     private BufferedImage renderAsImage(final PdfPageItem item) throws IOException {
-        return this.renderer.renderImageWithDPI(item.origIndex, Toolkit.getDefaultToolkit().getScreenResolution());
+        synchronized (this.document) {
+            return this.renderer.renderImageWithDPI(item.origIndex, Toolkit.getDefaultToolkit().getScreenResolution());
+        }
     }
 
     public DocumentEditPanel(
-            final PDDocument document) throws IOException {
+            final PDDocument document, final DocumentExecutor executor, final DocumentIndex index) throws IOException {
         initComponents();
 
-        this.document = cloneDocument(document, true);
-        final PDDocumentInformation info = this.document.getDocumentInformation();
+        // the panel works only with page indexes of the original document and changes it only in applyTo
+        this.document = document;
+        final COSDictionary infoDictionary = document.getDocument().getTrailer().getCOSDictionary(COSName.INFO);
+        final PDDocumentInformation info = infoDictionary == null ? new PDDocumentInformation() : new PDDocumentInformation(infoDictionary);
         this.textDocumentAuthor.setText(Objects.requireNonNullElse(info.getAuthor(), ""));
         this.textDocumentCreator.setText(Objects.requireNonNullElse(info.getCreator(), ""));
         this.textTitle.setText(Objects.requireNonNullElse(info.getTitle(), ""));
         this.textKeywords.setText(Objects.requireNonNullElse(info.getKeywords(), ""));
 
         this.renderer = new PDFRenderer(this.document);
+        this.thumbnails = new PageThumbnailCache(this.document, executor, index, PageThumbnailCache.DEFAULT_THUMBNAIL_SIZE, PageThumbnailCache.DEFAULT_MAX_BYTES, () -> {
+            this.listSourcePages.repaint();
+            this.listTargetPages.repaint();
+        });
 
         final PdfPageListModel modelIn = new PdfPageListModel(true);
         final PdfPageListModel modelOut = new PdfPageListModel(false);
 
-        final AtomicInteger counter = new AtomicInteger();
-        final Set<PdfPageItem> pages = new HashSet<>();
-        this.document.getPages().forEach(x -> {
-            final PdfPageItem item = new PdfPageItem(counter.getAndIncrement(), x);
-            pages.add(item);
-        });
-        modelIn.add(pages);
+        this.numberOfPages = this.document.getNumberOfPages();
+        final int[] pages = new int[numberOfPages];
+        for (int i = 0; i < numberOfPages; i++) {
+            pages[i] = i;
+        }
+        modelIn.addPages(pages);
 
         this.listSourcePages.setModel(modelIn);
         this.listTargetPages.setModel(modelOut);
 
-        this.listSourcePages.setPrototypeCellValue(new PdfPageItem(99999, null));
-        this.listTargetPages.setPrototypeCellValue(new PdfPageItem(99999, null));
+        for (final JList<PdfPageItem> list : List.of(this.listSourcePages, this.listTargetPages)) {
+            list.setCellRenderer(new PdfPageCellRenderer());
+            list.setLayoutOrientation(JList.HORIZONTAL_WRAP);
+            list.setVisibleRowCount(-1);
+            // fixed cell size keeps JList from rendering all cells to calculate layout
+            list.setPrototypeCellValue(new PdfPageItem(99999));
+        }
 
         this.buttonPageDown.setEnabled(false);
         this.buttonPageUp.setEnabled(false);
@@ -478,28 +661,25 @@ public class DocumentEditPanel extends javax.swing.JPanel {
     }// </editor-fold>//GEN-END:initComponents
 
     private void listSourcePagesValueChanged(javax.swing.event.ListSelectionEvent evt) {//GEN-FIRST:event_listSourcePagesValueChanged
-        this.buttonPageToTarget.setEnabled(!this.listSourcePages.getSelectedValuesList().isEmpty());
+        this.buttonPageToTarget.setEnabled(!this.listSourcePages.isSelectionEmpty());
     }//GEN-LAST:event_listSourcePagesValueChanged
 
     private void listTargetPagesValueChanged(javax.swing.event.ListSelectionEvent evt) {//GEN-FIRST:event_listTargetPagesValueChanged
-        final int selectedItems = this.listTargetPages.getSelectedValuesList().size();
-        this.buttonPageToSource.setEnabled(selectedItems != 0);
-        this.buttonPageDown.setEnabled(selectedItems == 1);
-        this.buttonPageUp.setEnabled(selectedItems == 1);
+        final boolean selected = !this.listTargetPages.isSelectionEmpty();
+        final boolean single = selected && this.listTargetPages.getMinSelectionIndex() == this.listTargetPages.getMaxSelectionIndex();
+        this.buttonPageToSource.setEnabled(selected);
+        this.buttonPageDown.setEnabled(single);
+        this.buttonPageUp.setEnabled(single);
     }//GEN-LAST:event_listTargetPagesValueChanged
 
     private void buttonPageToTargetActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_buttonPageToTargetActionPerformed
-        final List<PdfPageItem> selected = this.listSourcePages.getSelectedValuesList();
-        ((PdfPageListModel) this.listSourcePages.getModel()).removeAll(selected);
-        ((PdfPageListModel) this.listTargetPages.getModel()).add(selected);
+        this.movePages(this.listSourcePages, this.listTargetPages);
         this.listSourcePages.setSelectedIndices(new int[0]);
         this.listTargetPages.setSelectedIndices(new int[0]);
     }//GEN-LAST:event_buttonPageToTargetActionPerformed
 
     private void buttonPageToSourceActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_buttonPageToSourceActionPerformed
-        final List<PdfPageItem> selected = this.listTargetPages.getSelectedValuesList();
-        ((PdfPageListModel) this.listTargetPages.getModel()).removeAll(selected);
-        ((PdfPageListModel) this.listSourcePages.getModel()).add(selected);
+        this.movePages(this.listTargetPages, this.listSourcePages);
         this.listSourcePages.setSelectedIndices(new int[0]);
         this.listTargetPages.setSelectedIndices(new int[0]);
     }//GEN-LAST:event_buttonPageToSourceActionPerformed
@@ -542,16 +722,34 @@ public class DocumentEditPanel extends javax.swing.JPanel {
         }
     }//GEN-LAST:event_listTargetPagesMouseClicked
 
+    private void movePages(final JList<PdfPageItem> from, final JList<PdfPageItem> to) {
+        final int[] selectedRows = from.getSelectedIndices();
+        from.clearSelection();
+        final int[] pages = ((PdfPageListModel) from.getModel()).removeRows(selectedRows);
+        ((PdfPageListModel) to.getModel()).addPages(pages);
+    }
+
     private void showPage(final PdfPageItem item) {
-        try {
-            final BufferedImage image = renderAsImage(item);
-            final ImageIcon icon = new ImageIcon(image);
-            final JScrollPane scroll = new JScrollPane(new JLabel(icon));
-            UiUtils.makeOwningDialogResizable(scroll);
-            JOptionPane.showMessageDialog(this, scroll, item.toString(), JOptionPane.PLAIN_MESSAGE);
-        } catch (IOException ex) {
-            JOptionPane.showMessageDialog(this, "Error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        }
+        new SwingWorker<BufferedImage, Void>() {
+            @Override
+            protected BufferedImage doInBackground() throws Exception {
+                return renderAsImage(item);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    final ImageIcon icon = new ImageIcon(this.get());
+                    final JScrollPane scroll = new JScrollPane(new JLabel(icon));
+                    UiUtils.makeOwningDialogResizable(scroll);
+                    JOptionPane.showMessageDialog(DocumentEditPanel.this, scroll, item.toString(), JOptionPane.PLAIN_MESSAGE);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    JOptionPane.showMessageDialog(DocumentEditPanel.this, "Error: " + ex.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
     }
 
     static final class PdfPageListTransferHandler extends TransferHandler {
@@ -635,16 +833,12 @@ public class DocumentEditPanel extends javax.swing.JPanel {
                     }
                 }
 
-                for (int i = draggedIndices.length - 1; i >= 0; i--) {
-                    model.remove(draggedIndices[i]);
-                }
-
-                for (int i = 0; i < items.size(); i++) {
-                    model.add(adjustedDropIndex + i, items.get(i));
-                }
+                list.clearSelection();
+                final int[] pages = model.removeRows(draggedIndices);
+                model.insertPages(adjustedDropIndex, pages);
 
                 list.setSelectionInterval(adjustedDropIndex,
-                        adjustedDropIndex + items.size() - 1);
+                        adjustedDropIndex + pages.length - 1);
 
                 return true;
             } catch (Exception e) {
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Execution model of one document: all mutations are executed one by one by
+ * single writer thread, read tasks (render, scan, thumbnails) are executed by
+ * a pool under read lock, so they never see a half made change. Every
+ * completed write increments epoch of the document, a reader can compare
+ * epochs to drop results made for the previous state.
+ * <p>
+ * PDFBox is not thread safe even for reading, so read tasks which touch
+ * PDFBox objects of the document still must synchronize on the document
+ * object, the read lock only excludes them from writes.
+ * <p>
+ * A write task can hand mutations over to a helper thread while it holds the
+ * write lock and waits for the helper, for instance the "image-match-writer"
+ * thread of {@link ImageMatchPipeline} applies matched images. There is still
+ * only one thread changing the document at a time and readers are excluded
+ * until the write task ends.
+ * <p>
+ * Queue depth and lock contention are counted and can be logged.
+ */
+public final class DocumentExecutor implements Closeable {
+
+    public static final int DEFAULT_READ_THREADS = 2;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+    private final ThreadPoolExecutor writer;
+    private final ThreadPoolExecutor readers;
+    private volatile Thread writerThread;
+    private final AtomicLong epoch = new AtomicLong();
+
+    private final AtomicInteger maxWriteQueueDepth = new AtomicInteger();
+    private final AtomicInteger maxReadQueueDepth = new AtomicInteger();
+    private final AtomicLong completedWrites = new AtomicLong();
+    private final AtomicLong completedReads = new AtomicLong();
+    private final AtomicLong contendedWrites = new AtomicLong();
+    private final AtomicLong contendedReads = new AtomicLong();
+    private final AtomicLong writeWaitNanos = new AtomicLong();
+    private final AtomicLong readWaitNanos = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param readThreads number of threads executing read tasks
+     */
+    public DocumentExecutor(final int readThreads) {
+        this.writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            final Thread thread = new Thread(r, "document-writer");
+            thread.setDaemon(true);
+            this.writerThread = thread;
+            return thread;
+        });
+        final AtomicInteger readerIndex = new AtomicInteger();
+        this.readers = new ThreadPoolExecutor(readThreads, readThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            final Thread thread = new Thread(r, "document-reader-" + readerIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Get number of completed writes, it is changed only by writer.
+     *
+     * @return current epoch
+     */
+    public long getEpoch() {
+        return this.epoch.get();
+    }
+
+    /**
+     * Queue mutation of the document.
+     *
+     * @param <T> type of result
+     * @param task task changing the document
+     * @return future of the result
+     */
+    public <T> Future<T> submitWrite(final Callable<T> task) {
+        final Future<T> result = this.writer.submit(() -> {
+            final Lock writeLock = this.lock.writeLock();
+            this.acquire(writeLock, this.contendedWrites, this.writeWaitNanos);
+            try {
+                return task.call();
+            } finally {
+                this.epoch.incrementAndGet();
+                this.completedWrites.incrementAndGet();
+                writeLock.unlock();
+            }
+        });
+        updateMax(this.maxWriteQueueDepth, this.writer.getQueue().size());
+        return result;
+    }
+
+    /**
+     * Queue read task.
+     *
+     * @param <T> type of result
+     * @param task task reading the document
+     * @return future of the result
+     */
+    public <T> Future<T> submitRead(final Callable<T> task) {
+        final Future<T> result = this.readers.submit(() -> this.read(task));
+        updateMax(this.maxReadQueueDepth, this.readers.getQueue().size());
+        return result;
+    }
+
+    /**
+     * Execute mutation by the writer and wait for its end. If called from the
+     * writer then the task is executed immediately.
+     *
+     * @param <T> type of result
+     * @param task task changing the document
+     * @return result of the task
+     * @throws IOException if the task is failed or the wait is interrupted
+     */
+    public <T> T write(final Callable<T> task) throws IOException {
+        if (Thread.currentThread() == this.writerThread) {
+            return call(task);
+        }
+        try {
+            return this.submitWrite(task).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted wait of document write");
+        } catch (ExecutionException ex) {
+            throw unwrap(ex.getCause());
+        }
+    }
+
+    /**
+     * Execute read task in the current thread under read lock, for threads
+     * which are not part of the executor, for instance the thumbnail render
+     * thread.
+     *
+     * @param <T> type of result
+     * @param task task reading the document
+     * @return result of the task
+     * @throws IOException if the task is failed
+     */
+    public <T> T read(final Callable<T> task) throws IOException {
+        if (this.lock.isWriteLockedByCurrentThread()) {
+            return call(task);
+        }
+        final Lock readLock = this.lock.readLock();
+        this.acquire(readLock, this.contendedReads, this.readWaitNanos);
+        try {
+            return call(task);
+        } finally {
+            this.completedReads.incrementAndGet();
+            readLock.unlock();
+        }
+    }
+
+    private void acquire(final Lock target, final AtomicLong contended, final AtomicLong waitNanos) {
+        if (!target.tryLock()) {
+            contended.incrementAndGet();
+            final long start = System.nanoTime();
+            target.lock();
+            waitNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private static <T> T call(final Callable<T> task) throws IOException {
+        try {
+            return task.call();
+        } catch (Exception ex) {
+            throw unwrap(ex);
+        }
+    }
+
+    private static IOException unwrap(final Throwable error) {
+        if (error instanceof IOException) {
+            return (IOException) error;
+        } else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        } else {
+            return new IOException(error);
+        }
+    }
+
+    private static void updateMax(final AtomicInteger max, final int value) {
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public int getWriteQueueDepth() {
+        return this.writer.getQueue().size();
+    }
+
+    public int getReadQueueDepth() {
+        return this.readers.getQueue().size();
+    }
+
+    public int getMaxWriteQueueDepth() {
+        return this.maxWriteQueueDepth.get();
+    }
+
+    public int getMaxReadQueueDepth() {
+        return this.maxReadQueueDepth.get();
+    }
+
+    public long getContendedWrites() {
+        return this.contendedWrites.get();
+    }
+
+    public long getContendedReads() {
+        return this.contendedReads.get();
+    }
+
+    public long getWriteWaitMillis() {
+        return this.writeWaitNanos.get() / 1000000L;
+    }
+
+    public long getReadWaitMillis() {
+        return this.readWaitNanos.get() / 1000000L;
+    }
+
+    public String describeStatistics() {
+        return "writes " + this.completedWrites.get() + " (contended " + this.contendedWrites.get() + ", waited "
+                + this.getWriteWaitMillis() + " ms, max queue " + this.maxWriteQueueDepth.get() + "), reads " + this.completedReads.get()
+                + " (contended " + this.contendedReads.get() + ", waited " + this.getReadWaitMillis() + " ms, max queue " + this.maxReadQueueDepth.get() + ")";
+    }
+
+    /**
+     * Stop accepting tasks, queued tasks are completed in background.
+     */
+    @Override
+    public void close() {
+        this.readers.shutdown();
+        this.writer.shutdown();
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.pdfbox.cos.COSObjectKey;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.util.Matrix;
+
+/**
+ * Inventory of images and page previews of a document file. It describes
+ * the file as it was opened, so that it can be stored in the index cache and
+ * reused when the same file is opened again.
+ */
+public final class DocumentIndex {
+
+    private static final int MAGIC = 0x50495258;
+    private static final int VERSION = 1;
+
+    public static final class ImageEntry {
+
+        public final int pageIndex;
+        public final String name;
+        public final long objectNumber;
+        public final int generation;
+        public final int width;
+        public final int height;
+        public final byte[] digest;
+        /**
+         * Placement box on page as x, y, width and height in user space units.
+         */
+        public final float[] box;
+
+        private ImageEntry(final int pageIndex, final String name, final long objectNumber, final int generation,
+                final int width, final int height, final byte[] digest, final float[] box) {
+            this.pageIndex = pageIndex;
+            this.name = name;
+            this.objectNumber = objectNumber;
+            this.generation = generation;
+            this.width = width;
+            this.height = height;
+            this.digest = digest;
+            this.box = box;
+        }
+    }
+
+    private final long fileSize;
+    private final long lastModified;
+    private final int pageCount;
+    private final int thumbnailSize;
+    private volatile byte[] contentHash;
+    private final List<ImageEntry> images;
+    private final BitSet pagesWithImages;
+    private final Map<Integer, byte[]> thumbnails = new ConcurrentHashMap<>();
+    private final Map<Long, byte[]> digests = new ConcurrentHashMap<>();
+    private volatile boolean changed;
+
+    public DocumentIndex(final long fileSize, final long lastModified, final int pageCount, final int thumbnailSize) {
+        this(fileSize, lastModified, pageCount, thumbnailSize, null, new ArrayList<>(), new BitSet(pageCount));
+    }
+
+    private DocumentIndex(final long fileSize, final long lastModified, final int pageCount, final int thumbnailSize,
+            final byte[] contentHash, final List<ImageEntry> images, final BitSet pagesWithImages) {
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.pageCount = pageCount;
+        this.thumbnailSize = thumbnailSize;
+        this.contentHash = contentHash;
+        this.images = images;
+        this.pagesWithImages = pagesWithImages;
+    }
+
+    public long getFileSize() {
+        return this.fileSize;
+    }
+
+    public long getLastModified() {
+        return this.lastModified;
+    }
+
+    public int getPageCount() {
+        return this.pageCount;
+    }
+
+    public int getThumbnailSize() {
+        return this.thumbnailSize;
+    }
+
+    public byte[] getContentHash() {
+        return this.contentHash;
+    }
+
+    public void setContentHash(final byte[] contentHash) {
+        this.contentHash = contentHash;
+        this.changed = true;
+    }
+
+    public List<ImageEntry> getImages() {
+        return Collections.unmodifiableList(this.images);
+    }
+
+    public synchronized boolean hasImages(final int pageIndex) {
+        return this.pagesWithImages.get(pageIndex);
+    }
+
+    public synchronized int getPagesWithImagesCount() {
+        return this.pagesWithImages.cardinality();
+    }
+
+    public byte[] getThumbnail(final int pageIndex) {
+        return this.thumbnails.get(pageIndex);
+    }
+
+    public void putThumbnail(final int pageIndex, final byte[] encodedImage) {
+        if (this.thumbnails.put(pageIndex, encodedImage) == null) {
+            this.changed = true;
+        }
+    }
+
+    public int getThumbnailCount() {
+        return this.thumbnails.size();
+    }
+
+    /**
+     * Check that there is new data since the index was loaded or stored.
+     *
+     * @return true if the index should be stored
+     */
+    public boolean isChanged() {
+        return this.changed;
+    }
+
+    public void resetChanged() {
+        this.changed = false;
+    }
+
+    /**
+     * Add images of page into the index. Can be called from several threads
+     * for pages of different document instances opened for the same file,
+     * digests of images are shared by their object keys.
+     *
+     * @param pageIndex zero based page index
+     * @param page page to be scanned
+     * @param finder engine to find images, must not be shared between threads
+     * @throws IOException if page can't be processed
+     */
+    public void indexPage(final int pageIndex, final PDPage page, final ImageFinderStreamEngine finder) throws IOException {
+        final List<ImageEntry> found = new ArrayList<>();
+        for (final ImageFinderStreamEngine.FoundImage image : finder.findAllImages(page)) {
+            final COSStream stream = image.image.getCOSObject();
+            final COSObjectKey key = stream.getKey();
+            byte[] digest = key == null ? null : this.digests.get(key.getInternalHash());
+            if (digest == null) {
+                digest = calcDigest(stream);
+                if (key != null) {
+                    this.digests.putIfAbsent(key.getInternalHash(), digest);
+                }
+            }
+            found.add(new ImageEntry(pageIndex, image.name.getName(),
+                    key == null ? -1L : key.getNumber(), key == null ? 0 : key.getGeneration(),
+                    image.image.getWidth(), image.image.getHeight(), digest, makeBox(image.ctm)));
+        }
+        synchronized (this) {
+            this.images.addAll(found);
+            if (!found.isEmpty()) {
+                this.pagesWithImages.set(pageIndex);
+            }
+            this.changed = true;
+        }
+    }
+
+    /**
+     * Release temporary data used during index build and order images by
+     * pages.
+     */
+    public synchronized void completeIndexing() {
+        this.digests.clear();
+        this.images.sort(Comparator.comparingInt(x -> x.pageIndex));
+    }
+
+    private static byte[] calcDigest(final COSStream stream) throws IOException {
+        final MessageDigest digest = makeDigest();
+        final byte[] buffer = new byte[16384];
+        try (InputStream in = stream.createRawInputStream()) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    static MessageDigest makeDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported", ex);
+        }
+    }
+
+    private static float[] makeBox(final Matrix ctm) {
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            final float ux = i & 1;
+            final float uy = i >> 1;
+            final float x = ctm.getValue(0, 0) * ux + ctm.getValue(1, 0) * uy + ctm.getValue(2, 0);
+            final float y = ctm.getValue(0, 1) * ux + ctm.getValue(1, 1) * uy + ctm.getValue(2, 1);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+        return new float[]{minX, minY, maxX - minX, maxY - minY};
+    }
+
+    public void write(final DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(this.fileSize);
+        out.writeLong(this.lastModified);
+        out.writeInt(this.pageCount);
+        out.writeInt(this.thumbnailSize);
+        writeBytes(out, this.contentHash);
+
+        out.writeInt(this.images.size());
+        for (final ImageEntry entry : this.images) {
+            out.writeInt(entry.pageIndex);
+            out.writeUTF(entry.name);
+            out.writeLong(entry.objectNumber);
+            out.writeInt(entry.generation);
+            out.writeInt(entry.width);
+            out.writeInt(entry.height);
+            writeBytes(out, entry.digest);
+            for (final float value : entry.box) {
+                out.writeFloat(value);
+            }
+        }
+
+        final List<Map.Entry<Integer, byte[]>> thumbnailEntries = new ArrayList<>(this.thumbnails.entrySet());
+        out.writeInt(thumbnailEntries.size());
+        for (final Map.Entry<Integer, byte[]> entry : thumbnailEntries) {
+            out.writeInt(entry.getKey());
+            writeBytes(out, entry.getValue());
+        }
+    }
+
+    public static DocumentIndex read(final DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Unsupported index format");
+        }
+        final long fileSize = in.readLong();
+        final long lastModified = in.readLong();
+        final int pageCount = in.readInt();
+        final int thumbnailSize = in.readInt();
+        final byte[] contentHash = readBytes(in);
+
+        final int imageCount = in.readInt();
+        final List<ImageEntry> images = new ArrayList<>(imageCount);
+        final BitSet pagesWithImages = new BitSet(pageCount);
+        for (int i = 0; i < imageCount; i++) {
+            final int pageIndex = in.readInt();
+            final String name = in.readUTF();
+            final long objectNumber = in.readLong();
+            final int generation = in.readInt();
+            final int width = in.readInt();
+            final int height = in.readInt();
+            final byte[] digest = readBytes(in);
+            final float[] box = new float[4];
+            for (int j = 0; j < box.length; j++) {
+                box[j] = in.readFloat();
+            }
+            images.add(new ImageEntry(pageIndex, name, objectNumber, generation, width, height, digest, box));
+            pagesWithImages.set(pageIndex);
+        }
+
+        final DocumentIndex result = new DocumentIndex(fileSize, lastModified, pageCount, thumbnailSize, contentHash, images, pagesWithImages);
+        final int thumbnailCount = in.readInt();
+        for (int i = 0; i < thumbnailCount; i++) {
+            final int pageIndex = in.readInt();
+            result.thumbnails.put(pageIndex, readBytes(in));
+        }
+        return result;
+    }
+
+    private static void writeBytes(final DataOutputStream out, final byte[] data) throws IOException {
+        if (data == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(data.length);
+            out.write(data);
+        }
+    }
+
+    private static byte[] readBytes(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] result = new byte[length];
+        in.readFully(result);
+        return result;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Folder of document index files. Index file name is made from path of the
+ * document, the index is accepted only if size and modification time of the
+ * document are the same, the content hash is expected to be checked by the
+ * caller in background. Total size of the folder is kept under limit by
+ * removal of least recently used index files.
+ */
+public final class DocumentIndexCache {
+
+    public static final int DEFAULT_MAX_MB = 256;
+
+    private static final String EXTENSION = ".idx";
+
+    private final File folder;
+    private final long maxBytes;
+
+    public DocumentIndexCache(final File folder, final long maxBytes) {
+        this.folder = folder;
+        this.maxBytes = maxBytes;
+    }
+
+    public static File getDefaultFolder() {
+        return new File(new File(System.getProperty("user.home"), ".pdfimgremover"), "index");
+    }
+
+    /**
+     * Load index of document file.
+     *
+     * @param file document file, must not be null
+     * @return index if it is found and it has the same file size and
+     * modification time as the document, null otherwise
+     */
+    public DocumentIndex load(final File file) {
+        final File indexFile = this.getIndexFile(file);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(indexFile.toPath()), 65536)))) {
+            final DocumentIndex result = DocumentIndex.read(in);
+            if (result.getFileSize() != file.length() || result.getLastModified() != file.lastModified()) {
+                Files.deleteIfExists(indexFile.toPath());
+                return null;
+            }
+            // modification time of index file is used as last access time for eviction
+            Files.setLastModifiedTime(indexFile.toPath(), FileTime.fromMillis(System.currentTimeMillis()));
+            return result;
+        } catch (IOException ex) {
+            indexFile.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Write index of document file and remove old index files if the folder
+     * is over the size limit.
+     *
+     * @param file document file, must not be null
+     * @param index index of the document, must not be null
+     * @throws IOException if the index can't be written
+     */
+    public void store(final File file, final DocumentIndex index) throws IOException {
+        Files.createDirectories(this.folder.toPath());
+        final Path target = this.getIndexFile(file).toPath();
+        final Path temp = Files.createTempFile(this.folder.toPath(), "index", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp), 65536)))) {
+                index.write(out);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            index.resetChanged();
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        this.evict(target);
+    }
+
+    public void remove(final File file) {
+        this.getIndexFile(file).delete();
+    }
+
+    private void evict(final Path keep) throws IOException {
+        final List<Path> files;
+        try (Stream<Path> stream = Files.list(this.folder.toPath())) {
+            files = stream.filter(x -> x.getFileName().toString().endsWith(EXTENSION)).collect(Collectors.toCollection(ArrayList::new));
+        }
+        long total = 0L;
+        for (final Path path : files) {
+            total += Files.size(path);
+        }
+        files.sort(Comparator.comparingLong(x -> x.toFile().lastModified()));
+        for (final Path path : files) {
+            if (total <= this.maxBytes) {
+                break;
+            }
+            if (!path.equals(keep)) {
+                total -= Files.size(path);
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private File getIndexFile(final File file) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException ex) {
+            path = file.getAbsolutePath();
+        }
+        return new File(this.folder, toHex(DocumentIndex.makeDigest().digest(path.getBytes(StandardCharsets.UTF_8))) + EXTENSION);
+    }
+
+    /**
+     * Calculate SHA-256 of whole file content.
+     *
+     * @param file file to be processed, must not be null
+     * @param cancelled supplier to break calculation
+     * @return calculated hash
+     * @throws IOException if file can't be read or calculation is cancelled
+     */
+    public static byte[] calcContentHash(final File file, final BooleanSupplier cancelled) throws IOException {
+        final MessageDigest digest = DocumentIndex.makeDigest();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                if (cancelled.getAsBoolean()) {
+                    throw new InterruptedIOException("Cancelled");
+                }
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+
+    private static String toHex(final byte[] data) {
+        final StringBuilder result = new StringBuilder(data.length * 2);
+        for (final byte b : data) {
+            result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return result.toString();
+    }
+}
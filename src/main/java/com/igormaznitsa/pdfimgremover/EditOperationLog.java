@@ -0,0 +1,229 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Undo and redo stacks of edit operations. Every operation keeps only its
+ * reversible changes, so undo and redo cost number of changed entries and
+ * don't need copies of the document. The oldest operations are dropped if
+ * the undo stack is full.
+ * <p>
+ * The log is not thread safe, it should be used from the event dispatch
+ * thread.
+ */
+public final class EditOperationLog {
+
+    public static final int DEFAULT_MAX_OPERATIONS = 512;
+
+    /**
+     * Operation which can be undone and redone as a whole.
+     */
+    public static final class Operation {
+
+        private final String title;
+        private final List<DocumentChange> changes;
+        private boolean journaled;
+
+        private Operation(final String title, final List<DocumentChange> changes, final boolean journaled) {
+            this.title = title;
+            this.changes = Collections.unmodifiableList(new ArrayList<>(changes));
+            this.journaled = journaled;
+        }
+
+        public String getTitle() {
+            return this.title;
+        }
+
+        public List<DocumentChange> getChanges() {
+            return this.changes;
+        }
+
+        /**
+         * Check that the operation is written into operation journal, so
+         * its undo and redo should be written too.
+         *
+         * @return true if the operation is journaled
+         */
+        public boolean isJournaled() {
+            return this.journaled;
+        }
+
+        public boolean isPageOrderChanged() {
+            return this.changes.stream().anyMatch(PageOrderChange.class::isInstance);
+        }
+
+        private void revert() throws IOException {
+            int index = this.changes.size() - 1;
+            try {
+                for (; index >= 0; index--) {
+                    this.changes.get(index).revert();
+                }
+            } catch (IOException | RuntimeException ex) {
+                // keep operation consistent, it stays applied
+                for (index++; index < this.changes.size(); index++) {
+                    this.changes.get(index).apply();
+                }
+                throw ex;
+            }
+        }
+
+        private void apply() throws IOException {
+            int index = 0;
+            try {
+                for (; index < this.changes.size(); index++) {
+                    this.changes.get(index).apply();
+                }
+            } catch (IOException | RuntimeException ex) {
+                // keep operation consistent, it stays reverted
+                for (index--; index >= 0; index--) {
+                    this.changes.get(index).revert();
+                }
+                throw ex;
+            }
+        }
+    }
+
+    private final int maxOperations;
+    private final Deque<Operation> undoStack = new ArrayDeque<>();
+    private final Deque<Operation> redoStack = new ArrayDeque<>();
+
+    public EditOperationLog(final int maxOperations) {
+        if (maxOperations <= 0) {
+            throw new IllegalArgumentException("Max operations must be positive: " + maxOperations);
+        }
+        this.maxOperations = maxOperations;
+    }
+
+    /**
+     * Register made operation, operations which were undone can't be redone
+     * after that.
+     *
+     * @param title title of operation, must not be null
+     * @param changes made changes in order of execution, must not be null
+     * @return true if the operation is registered, false if it has no changes
+     */
+    public boolean add(final String title, final List<DocumentChange> changes) {
+        return this.add(title, changes, true);
+    }
+
+    /**
+     * Register made operation, operations which were undone can't be redone
+     * after that.
+     *
+     * @param title title of operation, must not be null
+     * @param changes made changes in order of execution, must not be null
+     * @param journaled true if the operation is written into operation
+     * journal
+     * @return true if the operation is registered, false if it has no changes
+     */
+    public boolean add(final String title, final List<DocumentChange> changes, final boolean journaled) {
+        if (changes.isEmpty()) {
+            return false;
+        }
+        this.redoStack.clear();
+        this.undoStack.push(new Operation(title, changes, journaled));
+        while (this.undoStack.size() > this.maxOperations) {
+            this.undoStack.removeLast();
+        }
+        return true;
+    }
+
+    /**
+     * Revert the last operation.
+     *
+     * @return reverted operation, null if there is no operation to undo
+     * @throws IOException if the operation can't be reverted, the document is
+     * kept unchanged
+     */
+    public Operation undo() throws IOException {
+        final Operation operation = this.undoStack.peek();
+        if (operation != null) {
+            operation.revert();
+            this.redoStack.push(this.undoStack.pop());
+        }
+        return operation;
+    }
+
+    /**
+     * Apply the last reverted operation again.
+     *
+     * @return applied operation, null if there is no operation to redo
+     * @throws IOException if the operation can't be applied, the document is
+     * kept unchanged
+     */
+    public Operation redo() throws IOException {
+        final Operation operation = this.redoStack.peek();
+        if (operation != null) {
+            operation.apply();
+            this.undoStack.push(this.redoStack.pop());
+        }
+        return operation;
+    }
+
+    public boolean canUndo() {
+        return !this.undoStack.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !this.redoStack.isEmpty();
+    }
+
+    public String getUndoTitle() {
+        return this.undoStack.isEmpty() ? null : this.undoStack.peek().getTitle();
+    }
+
+    public String getRedoTitle() {
+        return this.redoStack.isEmpty() ? null : this.redoStack.peek().getTitle();
+    }
+
+    /**
+     * Get number of changes kept by both stacks.
+     *
+     * @return number of changes
+     */
+    public int getChangeCount() {
+        int result = 0;
+        for (final Operation operation : this.undoStack) {
+            result += operation.getChanges().size();
+        }
+        for (final Operation operation : this.redoStack) {
+            result += operation.getChanges().size();
+        }
+        return result;
+    }
+
+    /**
+     * Mark all registered operations as not journaled, must be called if the
+     * journal is reset, otherwise undo and redo of them would be applied by
+     * replay to operations journaled later.
+     */
+    public void clearJournaled() {
+        this.undoStack.forEach(x -> x.journaled = false);
+        this.redoStack.forEach(x -> x.journaled = false);
+    }
+
+    public void clear() {
+        this.undoStack.clear();
+        this.redoStack.clear();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+/**
+ * Strategy to hide found images.
+ */
+public enum HideMode {
+    /**
+     * Replace image resource by transparent image of the same size.
+     */
+    TRANSPARENT_IMAGE("Replace by transparent image"),
+    /**
+     * Remove image invocations (Do operators) from content streams.
+     */
+    REMOVE_INVOCATION("Remove from content streams"),
+    /**
+     * Wrap image invocations into marked content bound to an optional content
+     * group which is turned off, original data is kept untouched.
+     */
+    OPTIONAL_CONTENT("Hide by optional content group");
+
+    private final String title;
+
+    HideMode(final String title) {
+        this.title = title;
+    }
+
+    public static HideMode findForName(final String name, final HideMode defaultMode) {
+        for (final HideMode mode : values()) {
+            if (mode.name().equals(name)) {
+                return mode;
+            }
+        }
+        return defaultMode;
+    }
+
+    @Override
+    public String toString() {
+        return this.title;
+    }
+}
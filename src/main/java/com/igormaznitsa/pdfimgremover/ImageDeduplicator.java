@@ -0,0 +1,176 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+/**
+ * Finds byte-identical image streams and repoints all resources dictionaries
+ * to one canonical image object per content digest.
+ */
+public final class ImageDeduplicator {
+
+    public static final class Result {
+
+        public final int repointedEntries;
+        public final int duplicateStreams;
+        public final long savedBytes;
+
+        private Result(final int repointedEntries, final int duplicateStreams, final long savedBytes) {
+            this.repointedEntries = repointedEntries;
+            this.duplicateStreams = duplicateStreams;
+            this.savedBytes = savedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "repointed " + this.repointedEntries + " resource entry(s), found " + this.duplicateStreams + " duplicated stream(s), saved " + this.savedBytes + " byte(s)";
+        }
+    }
+
+    private static final byte[] BUFFER_TAG = "stream".getBytes(StandardCharsets.US_ASCII);
+
+    private final ImageFinderStreamEngine finder = new ImageFinderStreamEngine();
+    private final Map<COSStream, String> digests = new IdentityHashMap<>();
+    private final Map<String, PDImageXObject> canonicalImages = new HashMap<>();
+    private final Set<COSStream> duplicates = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int repointedEntries;
+    private long savedBytes;
+
+    /**
+     * Find images on page and repoint duplicated ones to their canonical
+     * objects.
+     *
+     * @param page page to be processed
+     * @param changes list to collect made changes for undo, must not be null
+     * @return number of repointed resource entries
+     * @throws IOException if page or image stream can't be read
+     */
+    public int processPage(final PDPage page, final List<DocumentChange> changes) throws IOException {
+        int repointed = 0;
+        for (final ImageFinderStreamEngine.FoundImage found : this.finder.findAllImages(page)) {
+            final COSStream stream = found.image.getCOSObject();
+            String digest = this.digests.get(stream);
+            if (digest == null) {
+                digest = makeDigest(stream);
+                this.digests.put(stream, digest);
+            }
+            final PDImageXObject canonical = this.canonicalImages.computeIfAbsent(digest, d -> found.image);
+            if (canonical.getCOSObject() != stream) {
+                changes.add(DictionaryEntryChange.replaceXObject(found.resources, found.name, canonical));
+                if (this.duplicates.add(stream)) {
+                    this.savedBytes += stream.getLength();
+                }
+                repointed++;
+            }
+        }
+        this.repointedEntries += repointed;
+        return repointed;
+    }
+
+    public Result getResult() {
+        return new Result(this.repointedEntries, this.duplicates.size(), this.savedBytes);
+    }
+
+    private static String makeDigest(final COSStream stream) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("Can't find digest algorithm", ex);
+        }
+        updateDigest(digest, stream, Collections.newSetFromMap(new IdentityHashMap<>()));
+        final StringBuilder result = new StringBuilder();
+        for (final byte b : digest.digest()) {
+            result.append(String.format("%02x", b & 0xFF));
+        }
+        return result.toString();
+    }
+
+    private static void updateDigest(final MessageDigest digest, final COSBase value, final Set<COSBase> visited) throws IOException {
+        final COSBase base = value instanceof COSObject ? ((COSObject) value).getObject() : value;
+        if (base == null) {
+            digest.update((byte) 'n');
+        } else if (base instanceof COSName) {
+            digest.update((byte) '/');
+            digest.update(((COSName) base).getName().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        } else if (base instanceof COSNumber) {
+            digest.update((byte) '#');
+            digest.update(base.toString().getBytes(StandardCharsets.US_ASCII));
+        } else if (base instanceof COSBoolean) {
+            digest.update(((COSBoolean) base).getValue() ? (byte) 't' : (byte) 'f');
+        } else if (base instanceof COSString) {
+            final byte[] bytes = ((COSString) base).getBytes();
+            digest.update((byte) '(');
+            digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.US_ASCII));
+            digest.update(bytes);
+        } else if (!visited.add(base)) {
+            digest.update((byte) '@');
+        } else if (base instanceof COSArray) {
+            digest.update((byte) '[');
+            for (final COSBase item : (COSArray) base) {
+                updateDigest(digest, item, visited);
+            }
+            digest.update((byte) ']');
+        } else if (base instanceof COSDictionary) {
+            final COSDictionary dictionary = (COSDictionary) base;
+            final List<COSName> keys = new ArrayList<>(dictionary.keySet());
+            keys.remove(COSName.LENGTH);
+            Collections.sort(keys);
+            digest.update((byte) '<');
+            for (final COSName key : keys) {
+                updateDigest(digest, key, visited);
+                updateDigest(digest, dictionary.getItem(key), visited);
+            }
+            digest.update((byte) '>');
+            if (base instanceof COSStream) {
+                digest.update(BUFFER_TAG);
+                final byte[] buffer = new byte[65536];
+                try (InputStream in = ((COSStream) base).createRawInputStream()) {
+                    int read;
+                    while ((read = in.read(buffer)) >= 0) {
+                        digest.update(buffer, 0, read);
+                    }
+                }
+            }
+        } else {
+            digest.update(base.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
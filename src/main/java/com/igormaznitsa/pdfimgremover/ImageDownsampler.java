@@ -0,0 +1,470 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.color.PDCalGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.color.PDICCBased;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+/**
+ * Resamples images which are placed with effective resolution higher than
+ * threshold to target resolution and re-encodes them with codec chosen by
+ * their content: DCT for photos, Flate for bilevel and other images. Images
+ * are decoded sequentially because PDFBox document is not thread safe, but
+ * resampling and encoding are made in parallel. Results are written back as
+ * replacement XObjects for all found placements.
+ */
+public final class ImageDownsampler {
+
+    public enum Codec {
+        DCT,
+        FLATE,
+        FLATE_BILEVEL
+    }
+
+    public static final class Entry {
+
+        public final COSName name;
+        public final int objectNumber;
+        public final int sourceWidth;
+        public final int sourceHeight;
+        public final float sourceDpi;
+        public final long sourceBytes;
+        public final int targetWidth;
+        public final int targetHeight;
+        public final long targetBytes;
+        public final Codec codec;
+        public final boolean replaced;
+
+        private Entry(final Candidate candidate, final Encoded encoded, final boolean replaced) {
+            this.name = candidate.locations.get(0).name;
+            this.objectNumber = candidate.image.getCOSObject().getKey() == null ? -1 : (int) candidate.image.getCOSObject().getKey().getNumber();
+            this.sourceWidth = candidate.image.getWidth();
+            this.sourceHeight = candidate.image.getHeight();
+            this.sourceDpi = candidate.minDpi;
+            this.sourceBytes = candidate.sourceBytes;
+            this.targetWidth = encoded.width;
+            this.targetHeight = encoded.height;
+            this.targetBytes = encoded.getSize();
+            this.codec = encoded.codec;
+            this.replaced = replaced;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (obj %d) %dx%d@%.0fdpi %d bytes -> %dx%d %s %d bytes%s",
+                    this.name.getName(), this.objectNumber,
+                    this.sourceWidth, this.sourceHeight, this.sourceDpi, this.sourceBytes,
+                    this.targetWidth, this.targetHeight, this.codec.name(), this.targetBytes,
+                    this.replaced ? "" : " (kept original)");
+        }
+    }
+
+    private static final class Location {
+
+        private final PDResources resources;
+        private final COSName name;
+
+        private Location(final PDResources resources, final COSName name) {
+            this.resources = resources;
+            this.name = name;
+        }
+    }
+
+    private static final class Candidate {
+
+        private final PDImageXObject image;
+        private final List<Location> locations = new ArrayList<>();
+        private final long sourceBytes;
+        private float minDpi = Float.MAX_VALUE;
+        private BufferedImage decoded;
+
+        private Candidate(final PDImageXObject image) {
+            this.image = image;
+            this.sourceBytes = image.getCOSObject().getLength();
+        }
+    }
+
+    private static final class Encoded {
+
+        private final Codec codec;
+        private final boolean gray;
+        private final int width;
+        private final int height;
+        private final byte[] data;
+        private final byte[] alpha;
+
+        private Encoded(final Codec codec, final boolean gray, final int width, final int height, final byte[] data, final byte[] alpha) {
+            this.codec = codec;
+            this.gray = gray;
+            this.width = width;
+            this.height = height;
+            this.data = data;
+            this.alpha = alpha;
+        }
+
+        private long getSize() {
+            return this.data.length + (this.alpha == null ? 0 : this.alpha.length);
+        }
+    }
+
+    private final PDDocument document;
+    private final float thresholdDpi;
+    private final float targetDpi;
+    private final float jpegQuality;
+    private final ImageFinderStreamEngine finder = new ImageFinderStreamEngine();
+    private final Map<COSStream, Candidate> candidates = new IdentityHashMap<>();
+
+    public ImageDownsampler(final PDDocument document, final float thresholdDpi, final float targetDpi, final float jpegQuality) {
+        if (targetDpi <= 0.0f || thresholdDpi < targetDpi) {
+            throw new IllegalArgumentException("Target DPI must be positive and not greater than threshold DPI");
+        }
+        this.document = document;
+        this.thresholdDpi = thresholdDpi;
+        this.targetDpi = targetDpi;
+        this.jpegQuality = jpegQuality;
+    }
+
+    /**
+     * Collect image placements on page.
+     *
+     * @param page page to be scanned
+     * @throws IOException if page can't be processed
+     */
+    public void scanPage(final PDPage page) throws IOException {
+        for (final ImageFinderStreamEngine.FoundImage found : this.finder.findAllImages(page)) {
+            if (found.image.isStencil()) {
+                continue;
+            }
+            final Candidate candidate = this.candidates.computeIfAbsent(found.image.getCOSObject(), k -> new Candidate(found.image));
+            final float dpi = found.getEffectiveDpi();
+            if (dpi > 0.0f) {
+                candidate.minDpi = Math.min(candidate.minDpi, dpi);
+            }
+            final boolean known = candidate.locations.stream().anyMatch(x -> x.resources.getCOSObject() == found.resources.getCOSObject() && x.name.equals(found.name));
+            if (!known) {
+                candidate.locations.add(new Location(found.resources, found.name));
+            }
+        }
+    }
+
+    /**
+     * Resample and replace all collected images which have effective
+     * resolution over threshold.
+     *
+     * @param threads number of threads to resample and encode images
+     * @param progress consumer gets number of processed images
+     * @param changes list to collect made changes for undo, must not be null
+     * @return list of processed images
+     * @throws IOException if any image can't be decoded or encoded
+     */
+    public List<Entry> process(final int threads, final IntConsumer progress, final List<DocumentChange> changes) throws IOException {
+        final List<Candidate> toProcess = new ArrayList<>();
+        for (final Candidate c : this.candidates.values()) {
+            if (c.minDpi != Float.MAX_VALUE && c.minDpi > this.thresholdDpi) {
+                toProcess.add(c);
+            }
+        }
+        this.candidates.clear();
+
+        final List<Entry> result = new ArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            final Iterator<Candidate> iterator = toProcess.iterator();
+            int processed = 0;
+            while (iterator.hasNext()) {
+                final List<Candidate> batch = new ArrayList<>();
+                final List<Callable<Encoded>> tasks = new ArrayList<>();
+                while (iterator.hasNext() && batch.size() < Math.max(1, threads) * 2) {
+                    final Candidate candidate = iterator.next();
+                    candidate.decoded = candidate.image.getImage();
+                    batch.add(candidate);
+                    tasks.add(() -> this.encode(candidate));
+                }
+
+                final List<Future<Encoded>> futures = executor.invokeAll(tasks);
+                for (int i = 0; i < batch.size(); i++) {
+                    final Candidate candidate = batch.get(i);
+                    candidate.decoded = null;
+                    final Encoded encoded = futures.get(i).get();
+                    if (encoded.getSize() < candidate.sourceBytes) {
+                        final PDImageXObject replacement = this.makeImage(encoded);
+                        for (final Location location : candidate.locations) {
+                            changes.add(DictionaryEntryChange.replaceXObject(location.resources, location.name, replacement));
+                        }
+                        result.add(new Entry(candidate, encoded, true));
+                    } else {
+                        result.add(new Entry(candidate, encoded, false));
+                    }
+                    progress.accept(++processed);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("Can't encode image: " + ex.getCause().getMessage(), ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    public int getCandidateCount() {
+        int result = 0;
+        for (final Candidate c : this.candidates.values()) {
+            if (c.minDpi != Float.MAX_VALUE && c.minDpi > this.thresholdDpi) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    private Encoded encode(final Candidate candidate) throws IOException {
+        final BufferedImage source = candidate.decoded;
+        final float scale = this.targetDpi / candidate.minDpi;
+        final int width = Math.max(1, Math.round(source.getWidth() * scale));
+        final int height = Math.max(1, Math.round(source.getHeight() * scale));
+        final boolean alpha = source.getColorModel().hasAlpha() && hasTransparentPixels(source);
+
+        // indexed, separation and devicen images have one component too, but their samples are not gray levels
+        final boolean grayColorSpace = isGray(candidate.image.getColorSpace());
+        final Codec codec;
+        if (!alpha && candidate.image.getBitsPerComponent() == 1 && grayColorSpace) {
+            codec = Codec.FLATE_BILEVEL;
+        } else if (!alpha && isPhoto(candidate.image, source)) {
+            codec = Codec.DCT;
+        } else {
+            codec = Codec.FLATE;
+        }
+
+        final boolean gray = codec == Codec.FLATE_BILEVEL || grayColorSpace;
+        final BufferedImage resampled = resample(source, width, height, alpha ? BufferedImage.TYPE_INT_ARGB : gray ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+
+        switch (codec) {
+            case DCT:
+                return new Encoded(codec, gray, width, height, encodeJpeg(resampled, this.jpegQuality), null);
+            case FLATE_BILEVEL:
+                return new Encoded(codec, true, width, height, deflate(packBilevel(resampled)), null);
+            default:
+                return new Encoded(codec, gray, width, height, deflate(packSamples(resampled, gray)), alpha ? deflate(packAlpha(resampled)) : null);
+        }
+    }
+
+    private static boolean isGray(final PDColorSpace colorSpace) {
+        return colorSpace instanceof PDDeviceGray
+                || colorSpace instanceof PDCalGray
+                || (colorSpace instanceof PDICCBased && colorSpace.getNumberOfComponents() == 1);
+    }
+
+    private PDImageXObject makeImage(final Encoded encoded) throws IOException {
+        if (encoded.codec == Codec.DCT) {
+            return JPEGFactory.createFromByteArray(this.document, encoded.data);
+        }
+        final boolean bilevel = encoded.codec == Codec.FLATE_BILEVEL;
+        final PDColorSpace colorSpace = encoded.gray ? PDDeviceGray.INSTANCE : PDDeviceRGB.INSTANCE;
+        final PDImageXObject image = new PDImageXObject(new PDStream(this.makeFlateStream(encoded.data)), null);
+        image.setWidth(encoded.width);
+        image.setHeight(encoded.height);
+        image.setBitsPerComponent(bilevel ? 1 : 8);
+        image.setColorSpace(colorSpace);
+        if (encoded.alpha != null) {
+            final PDImageXObject mask = new PDImageXObject(new PDStream(this.makeFlateStream(encoded.alpha)), null);
+            mask.setWidth(encoded.width);
+            mask.setHeight(encoded.height);
+            mask.setBitsPerComponent(8);
+            mask.setColorSpace(PDDeviceGray.INSTANCE);
+            image.getCOSObject().setItem(COSName.SMASK, mask);
+        }
+        return image;
+    }
+
+    private COSStream makeFlateStream(final byte[] deflated) throws IOException {
+        final COSStream stream = this.document.getDocument().createCOSStream();
+        try (OutputStream out = stream.createRawOutputStream()) {
+            out.write(deflated);
+        }
+        stream.setItem(COSName.FILTER, COSName.FLATE_DECODE);
+        stream.setItem(COSName.TYPE, COSName.XOBJECT);
+        stream.setItem(COSName.SUBTYPE, COSName.IMAGE);
+        return stream;
+    }
+
+    private static BufferedImage resample(final BufferedImage source, final int width, final int height, final int type) {
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+            final BufferedImage next = new BufferedImage(currentWidth, currentHeight, type);
+            final Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (currentWidth != width || currentHeight != height);
+        return current;
+    }
+
+    private static boolean hasTransparentPixels(final BufferedImage image) {
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                if ((image.getRGB(x, y) >>> 24) != 0xFF) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPhoto(final PDImageXObject image, final BufferedImage decoded) throws IOException {
+        final COSName filter = image.getCOSObject().getCOSName(COSName.FILTER);
+        if (COSName.DCT_DECODE.equals(filter) || COSName.JPX_DECODE.equals(filter)) {
+            return true;
+        }
+        final Set<Integer> colors = new HashSet<>();
+        final int stepX = Math.max(1, decoded.getWidth() / 64);
+        final int stepY = Math.max(1, decoded.getHeight() / 64);
+        for (int y = 0; y < decoded.getHeight(); y += stepY) {
+            for (int x = 0; x < decoded.getWidth(); x += stepX) {
+                colors.add(decoded.getRGB(x, y) & 0xFFFFFF);
+                if (colors.size() > 256) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static byte[] encodeJpeg(final BufferedImage image, final float quality) throws IOException {
+        final Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("Can't find JPEG writer");
+        }
+        final ImageWriter writer = writers.next();
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(buffer)) {
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return buffer.toByteArray();
+    }
+
+    private static byte[] packSamples(final BufferedImage image, final boolean gray) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final byte[] result = new byte[width * height * (gray ? 1 : 3)];
+        int pos = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int rgb = image.getRGB(x, y);
+                if (gray) {
+                    result[pos++] = (byte) (rgb & 0xFF);
+                } else {
+                    result[pos++] = (byte) (rgb >> 16);
+                    result[pos++] = (byte) (rgb >> 8);
+                    result[pos++] = (byte) rgb;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static byte[] packAlpha(final BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final byte[] result = new byte[width * height];
+        int pos = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                result[pos++] = (byte) (image.getRGB(x, y) >>> 24);
+            }
+        }
+        return result;
+    }
+
+    private static byte[] packBilevel(final BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int rowBytes = (width + 7) / 8;
+        final byte[] result = new byte[rowBytes * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if ((image.getRGB(x, y) & 0xFF) >= 128) {
+                    result[y * rowBytes + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static byte[] deflate(final byte[] data) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(buffer, deflater)) {
+            out.write(data);
+        } finally {
+            deflater.end();
+        }
+        return buffer.toByteArray();
+    }
+}
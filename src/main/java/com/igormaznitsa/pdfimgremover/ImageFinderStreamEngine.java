@@ -16,11 +16,18 @@
 package com.igormaznitsa.pdfimgremover;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import org.apache.pdfbox.contentstream.PDContentStream;
 import org.apache.pdfbox.contentstream.PDFStreamEngine;
 import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.state.Concatenate;
+import org.apache.pdfbox.contentstream.operator.state.Restore;
+import org.apache.pdfbox.contentstream.operator.state.Save;
 import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -28,19 +35,64 @@ import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.graphics.PDXObject;
 import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.util.Matrix;
 
 public class ImageFinderStreamEngine extends PDFStreamEngine {
 
+    /**
+     * Invocation of form XObject on the way from page to found image.
+     */
+    public static class FormInvocation {
+
+        public final COSName name;
+        public final PDFormXObject form;
+        public final PDResources resources;
+        public final PDContentStream contentStream;
+
+        private FormInvocation(COSName name, PDFormXObject form, PDResources resources, PDContentStream contentStream) {
+            this.name = name;
+            this.form = form;
+            this.resources = resources;
+            this.contentStream = contentStream;
+        }
+    }
+
     public static class FoundImage implements Comparable<FoundImage> {
 
         public final COSName name;
         public final PDImageXObject image;
         public final PDResources resources;
+        public final PDContentStream contentStream;
+        public final Matrix ctm;
+        /**
+         * Forms drawn on the way from page to the image, the outermost is the
+         * first one, empty if the image is drawn by page content.
+         */
+        public final List<FormInvocation> forms;
 
-        private FoundImage(COSName name, PDImageXObject image, PDResources resources) {
+        private FoundImage(COSName name, PDImageXObject image, PDResources resources, PDContentStream contentStream, Matrix ctm, List<FormInvocation> forms) {
             this.name = name;
             this.image = image;
             this.resources = resources;
+            this.contentStream = contentStream;
+            this.ctm = ctm;
+            this.forms = forms;
+        }
+
+        /**
+         * Get effective resolution of the image in its placement.
+         *
+         * @return minimal resolution for both axes in dots per inch, or zero if
+         * placement is degenerated, flipped placement has the same resolution
+         * as not flipped one
+         */
+        public float getEffectiveDpi() {
+            final float widthInches = Math.abs(this.ctm.getScalingFactorX()) / 72.0f;
+            final float heightInches = Math.abs(this.ctm.getScalingFactorY()) / 72.0f;
+            if (widthInches == 0.0f || heightInches == 0.0f) {
+                return 0.0f;
+            }
+            return Math.min(this.image.getWidth() / widthInches, this.image.getHeight() / heightInches);
         }
 
         @Override
@@ -49,6 +101,17 @@ public class ImageFinderStreamEngine extends PDFStreamEngine {
         }
     }
     private final Map<COSName, FoundImage> foundImages = new HashMap<>();
+    private final List<FoundImage> foundInvocations = new ArrayList<>();
+    private final Deque<PDContentStream> contentStreams = new ArrayDeque<>();
+    private final List<FormInvocation> formInvocations = new ArrayList<>();
+
+    public ImageFinderStreamEngine() {
+        super();
+        // track transformation matrix to know placement of images
+        this.addOperator(new Concatenate(this));
+        this.addOperator(new Save(this));
+        this.addOperator(new Restore(this));
+    }
 
     public Map<COSName, FoundImage> findImages(final PDPage page) throws IOException {
         try {
@@ -57,6 +120,51 @@ public class ImageFinderStreamEngine extends PDFStreamEngine {
             return new HashMap<>(this.foundImages);
         } finally {
             this.foundImages.clear();
+            this.foundInvocations.clear();
+            this.contentStreams.clear();
+            this.formInvocations.clear();
+        }
+    }
+
+    /**
+     * Find all image invocations on page, unlike {@link #findImages(PDPage)}
+     * images with the same name but placed in different resources (for
+     * instance page and form resources) are returned as different items.
+     *
+     * @param page page to be processed
+     * @return list of all image invocations in order of their appearance
+     * @throws IOException if page can't be processed
+     */
+    public List<FoundImage> findAllImages(final PDPage page) throws IOException {
+        try {
+            this.foundInvocations.clear();
+            this.processPage(page);
+            return new ArrayList<>(this.foundInvocations);
+        } finally {
+            this.foundImages.clear();
+            this.foundInvocations.clear();
+            this.contentStreams.clear();
+            this.formInvocations.clear();
+        }
+    }
+
+    @Override
+    public void processPage(final PDPage page) throws IOException {
+        this.contentStreams.push(page);
+        try {
+            super.processPage(page);
+        } finally {
+            this.contentStreams.pop();
+        }
+    }
+
+    @Override
+    public void showForm(final PDFormXObject form) throws IOException {
+        this.contentStreams.push(form);
+        try {
+            super.showForm(form);
+        } finally {
+            this.contentStreams.pop();
         }
     }
 
@@ -67,10 +175,18 @@ public class ImageFinderStreamEngine extends PDFStreamEngine {
             PDXObject xobject = getResources().getXObject(objectName);
             if (xobject instanceof PDImageXObject) {
                 PDImageXObject image = (PDImageXObject) xobject;
-                this.foundImages.put(objectName, new FoundImage(objectName, image, this.getResources()));
+                final FoundImage found = new FoundImage(objectName, image, this.getResources(), this.contentStreams.peek(),
+                        this.getGraphicsState().getCurrentTransformationMatrix().clone(), List.copyOf(this.formInvocations));
+                this.foundImages.put(objectName, found);
+                this.foundInvocations.add(found);
             } else if (xobject instanceof PDFormXObject) {
                 PDFormXObject form = (PDFormXObject) xobject;
-                showForm(form);
+                this.formInvocations.add(new FormInvocation(objectName, form, this.getResources(), this.contentStreams.peek()));
+                try {
+                    showForm(form);
+                } finally {
+                    this.formInvocations.remove(this.formInvocations.size() - 1);
+                }
             }
         } else {
             super.processOperator(operator, operands);
@@ -0,0 +1,490 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import com.igormaznitsa.pdfimgremover.ImageFinderStreamEngine.FoundImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNull;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+/**
+ * Pipeline to find images by their decoded content or by their names. The
+ * scanner (the caller thread) walks pages once, matches images which can be
+ * matched without decode and enumerates other candidate images, a pool of decoder
+ * threads decodes candidates and matches them, and a single writer thread
+ * applies changes for matched images. Stages are connected by bounded
+ * queues.
+ * <p>
+ * PDFBox document is not thread safe and streams of a parsed file share the
+ * same reader, so the scanner copies encoded data and decode parameters of
+ * every candidate into a detached in-memory stream and decoders work only
+ * with their own copies. The scanner and the writer access the document
+ * under lock of the document object. An image shared by several pages is
+ * decoded only once.
+ */
+public final class ImageMatchPipeline {
+
+    public static final int NO_MATCH = -1;
+
+    private static final int MAX_DETACH_DEPTH = 16;
+    private static final int QUEUE_SIZE_PER_DECODER = 2;
+    private static final int MATCH_QUEUE_SIZE = 256;
+
+    /**
+     * Image keys needed to decode image data.
+     */
+    private static final COSName[] DECODE_KEYS = new COSName[]{
+        COSName.WIDTH, COSName.HEIGHT, COSName.BITS_PER_COMPONENT, COSName.COLORSPACE,
+        COSName.FILTER, COSName.DECODE_PARMS, COSName.DECODE, COSName.IMAGE_MASK
+    };
+
+    /**
+     * Matcher of decoded images.
+     */
+    @FunctionalInterface
+    public interface Matcher {
+
+        /**
+         * Match image, called from decoder threads.
+         *
+         * @param image detached copy of candidate image
+         * @return index of matched target or NO_MATCH
+         * @throws IOException if image can't be decoded
+         */
+        int match(PDImageXObject image) throws IOException;
+    }
+
+    /**
+     * Writer of changes for matched images.
+     */
+    @FunctionalInterface
+    public interface Applier {
+
+        /**
+         * Apply change, called from the writer thread under lock of the
+         * document.
+         *
+         * @param found found image on page
+         * @param target index of matched target
+         * @throws IOException if change can't be applied
+         */
+        void apply(FoundImage found, int target) throws IOException;
+    }
+
+    private static final class Candidate {
+
+        private COSStream detached;
+        private List<FoundImage> waiting = new ArrayList<>();
+        private int target = NO_MATCH;
+
+        private Candidate(final COSStream detached) {
+            this.detached = detached;
+        }
+
+        /**
+         * Register found image of the candidate.
+         *
+         * @return true if decision is not made yet and the image is waiting
+         * for it
+         */
+        private synchronized boolean addWaiting(final FoundImage found) {
+            if (this.waiting == null) {
+                return false;
+            }
+            this.waiting.add(found);
+            return true;
+        }
+
+        private synchronized int getTarget() {
+            return this.target;
+        }
+
+        private synchronized List<FoundImage> decide(final int target) {
+            final List<FoundImage> result = this.waiting;
+            this.target = target;
+            this.waiting = null;
+            this.detached = null;
+            return result;
+        }
+    }
+
+    private static final class Match {
+
+        private final FoundImage found;
+        private final int target;
+
+        private Match(final FoundImage found, final int target) {
+            this.found = found;
+            this.target = target;
+        }
+    }
+
+    private static final Match STOP = new Match(null, NO_MATCH);
+
+    private final int decoders;
+    private final ResourcePatchTracker patchTracker;
+
+    private final AtomicInteger decodedImages = new AtomicInteger();
+    private final AtomicInteger decodeErrors = new AtomicInteger();
+    private final AtomicInteger appliedMatches = new AtomicInteger();
+    private int reusedDecisions;
+    private int skippedImages;
+    private int interpretedPages;
+    private long interpretationNanos;
+
+    private volatile boolean failed;
+    private volatile Throwable writerError;
+
+    /**
+     * Constructor.
+     *
+     * @param decoders number of decoder threads
+     * @param patchTracker tracker to skip pages whose images were already
+     * found on other pages, can be null if every page must be interpreted
+     */
+    public ImageMatchPipeline(final int decoders, final ResourcePatchTracker patchTracker) {
+        this.decoders = Math.max(1, decoders);
+        this.patchTracker = patchTracker;
+    }
+
+    public int getDecoders() {
+        return this.decoders;
+    }
+
+    public int getDecodedImages() {
+        return this.decodedImages.get();
+    }
+
+    public int getDecodeErrors() {
+        return this.decodeErrors.get();
+    }
+
+    public int getAppliedMatches() {
+        return this.appliedMatches.get();
+    }
+
+    /**
+     * Get number of found images which got decision made for the same image
+     * object met earlier.
+     *
+     * @return number of found images without own decode
+     */
+    public int getReusedDecisions() {
+        return this.reusedDecisions;
+    }
+
+    public int getInterpretedPages() {
+        return this.interpretedPages;
+    }
+
+    public long getInterpretationMillis() {
+        return this.interpretationNanos / 1000000L;
+    }
+
+    /**
+     * Get number of images rejected by candidate filter without decode.
+     *
+     * @return number of skipped images
+     */
+    public int getSkippedImages() {
+        return this.skippedImages;
+    }
+
+    /**
+     * Process pages of document.
+     *
+     * @param document document to be processed, also used as lock
+     * @param pageIndexes indexes of pages to be processed
+     * @param finder engine to find images on pages
+     * @param pageFilter fast check that page can contain matching images,
+     * pages rejected by the filter are not interpreted, called from the
+     * caller thread under lock of the document
+     * @param directMatcher match of found image without decode (for instance
+     * by name), called from the caller thread under lock of the document, its
+     * match takes precedence over match by decoded data
+     * @param candidateFilter fast check of image before decode, called from
+     * the caller thread under lock of the document
+     * @param matcher matcher of decoded candidates
+     * @param applier writer of changes for matched images
+     * @param cancelled supplier to break processing between pages
+     * @param pagesProcessed consumer of number of already scanned pages
+     * @throws IOException if pages can't be scanned or changes can't be
+     * applied, or processing is cancelled (matches queued before cancel are
+     * applied anyway)
+     */
+    public void run(final PDDocument document, final List<Integer> pageIndexes, final ImageFinderStreamEngine finder,
+            final Predicate<PDPage> pageFilter, final ToIntFunction<FoundImage> directMatcher,
+            final Predicate<PDImageXObject> candidateFilter, final Matcher matcher, final Applier applier,
+            final BooleanSupplier cancelled, final IntConsumer pagesProcessed) throws IOException {
+        final BlockingQueue<Match> matches = new ArrayBlockingQueue<>(MATCH_QUEUE_SIZE);
+        final Thread writer = new Thread(() -> this.writeLoop(document, matches, applier), "image-match-writer");
+        writer.setDaemon(true);
+
+        final AtomicInteger decoderCounter = new AtomicInteger();
+        final ThreadPoolExecutor decoderPool = new ThreadPoolExecutor(this.decoders, this.decoders, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.decoders * QUEUE_SIZE_PER_DECODER),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "image-match-decoder-" + decoderCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, executor) -> {
+                    // full queue blocks the scanner
+                    try {
+                        executor.getQueue().put(runnable);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(ex);
+                    }
+                });
+
+        writer.start();
+        final Map<COSStream, Candidate> candidates = new IdentityHashMap<>();
+        try {
+            int processed = 0;
+            for (final Integer pageIndex : pageIndexes) {
+                if (this.failed) {
+                    break;
+                }
+                if (cancelled.getAsBoolean()) {
+                    throw new InterruptedIOException("Cancelled by user");
+                }
+                final List<Match> ready = new ArrayList<>();
+                final List<Candidate> toDecode = new ArrayList<>();
+                synchronized (document) {
+                    final PDPage page = document.getPage(pageIndex);
+                    final Collection<FoundImage> foundImages;
+                    if (!pageFilter.test(page) || (this.patchTracker != null && this.patchTracker.isHandled(page))) {
+                        foundImages = List.of();
+                    } else {
+                        final long start = System.nanoTime();
+                        foundImages = finder.findAllImages(page);
+                        this.interpretationNanos += System.nanoTime() - start;
+                        this.interpretedPages++;
+                    }
+                    for (final FoundImage found : foundImages) {
+                        if (this.patchTracker != null) {
+                            this.patchTracker.markScanned(found);
+                        }
+                        final int directTarget = directMatcher.applyAsInt(found);
+                        if (directTarget != NO_MATCH) {
+                            ready.add(new Match(found, directTarget));
+                            continue;
+                        }
+                        final COSStream stream = found.image.getCOSObject();
+                        Candidate candidate = candidates.get(stream);
+                        if (candidate == null) {
+                            candidate = this.makeCandidate(found, candidateFilter);
+                            candidates.put(stream, candidate);
+                            if (candidate.addWaiting(found)) {
+                                toDecode.add(candidate);
+                            }
+                        } else {
+                            this.reusedDecisions++;
+                            if (!candidate.addWaiting(found) && candidate.getTarget() != NO_MATCH) {
+                                ready.add(new Match(found, candidate.getTarget()));
+                            }
+                        }
+                    }
+                }
+                for (final Match match : ready) {
+                    this.send(matches, match);
+                }
+                for (final Candidate candidate : toDecode) {
+                    decoderPool.execute(() -> this.decode(candidate, matcher, matches));
+                }
+                processed++;
+                pagesProcessed.accept(processed);
+            }
+        } catch (IOException | RuntimeException ex) {
+            this.failed = true;
+            throw ex;
+        } finally {
+            decoderPool.shutdown();
+            try {
+                if (this.failed) {
+                    // decoders work only with detached copies, so they can be interrupted
+                    decoderPool.shutdownNow();
+                }
+                decoderPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                // the writer is not interrupted because it works with the document
+                matches.put(STOP);
+                writer.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                this.failed = true;
+            }
+        }
+
+        if (this.writerError != null) {
+            throw this.writerError instanceof IOException ? (IOException) this.writerError : new IOException(this.writerError);
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Interrupted");
+        }
+    }
+
+    private Candidate makeCandidate(final FoundImage found, final Predicate<PDImageXObject> candidateFilter) {
+        if (!candidateFilter.test(found.image)) {
+            this.skippedImages++;
+            final Candidate result = new Candidate(null);
+            result.decide(NO_MATCH);
+            return result;
+        }
+        try {
+            return new Candidate(detachImage(found.image.getCOSObject()));
+        } catch (IOException ex) {
+            this.decodeErrors.incrementAndGet();
+            final Candidate result = new Candidate(null);
+            result.decide(NO_MATCH);
+            return result;
+        }
+    }
+
+    private void decode(final Candidate candidate, final Matcher matcher, final BlockingQueue<Match> matches) {
+        int target = NO_MATCH;
+        if (!this.failed) {
+            try {
+                target = matcher.match(new PDImageXObject(new PDStream(candidate.detached), null));
+                this.decodedImages.incrementAndGet();
+            } catch (IOException | RuntimeException ex) {
+                this.decodeErrors.incrementAndGet();
+            }
+        }
+        final List<FoundImage> waiting = candidate.decide(target);
+        if (target != NO_MATCH) {
+            for (final FoundImage found : waiting) {
+                this.send(matches, new Match(found, target));
+            }
+        }
+    }
+
+    private void send(final BlockingQueue<Match> matches, final Match match) {
+        if (this.failed) {
+            return;
+        }
+        try {
+            matches.put(match);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            this.failed = true;
+        }
+    }
+
+    private void writeLoop(final PDDocument document, final BlockingQueue<Match> matches, final Applier applier) {
+        while (true) {
+            final Match match;
+            try {
+                match = matches.take();
+            } catch (InterruptedException ex) {
+                this.failed = true;
+                break;
+            }
+            if (match == STOP) {
+                break;
+            }
+            // after error the queue is still drained to not block producers
+            if (this.writerError == null) {
+                try {
+                    synchronized (document) {
+                        applier.apply(match.found, match.target);
+                    }
+                    this.appliedMatches.incrementAndGet();
+                } catch (IOException | RuntimeException ex) {
+                    this.writerError = ex;
+                    this.failed = true;
+                }
+            }
+        }
+    }
+
+    private static COSStream detachImage(final COSStream image) throws IOException {
+        final COSStream result = new COSStream();
+        for (final COSName key : DECODE_KEYS) {
+            final COSBase value = image.getItem(key);
+            if (value != null) {
+                result.setItem(key, detach(value, 0));
+            }
+        }
+        copyRawData(image, result);
+        return result;
+    }
+
+    private static COSBase detach(final COSBase value, final int depth) throws IOException {
+        if (depth > MAX_DETACH_DEPTH) {
+            throw new IOException("Too deep image parameters");
+        }
+        final COSBase resolved = value instanceof COSObject ? ((COSObject) value).getObject() : value;
+        if (resolved instanceof COSStream) {
+            final COSStream source = (COSStream) resolved;
+            final COSStream result = new COSStream();
+            for (final Map.Entry<COSName, COSBase> entry : source.entrySet()) {
+                if (!COSName.LENGTH.equals(entry.getKey())) {
+                    result.setItem(entry.getKey(), detach(entry.getValue(), depth + 1));
+                }
+            }
+            copyRawData(source, result);
+            return result;
+        } else if (resolved instanceof COSDictionary) {
+            final COSDictionary result = new COSDictionary();
+            for (final Map.Entry<COSName, COSBase> entry : ((COSDictionary) resolved).entrySet()) {
+                result.setItem(entry.getKey(), detach(entry.getValue(), depth + 1));
+            }
+            return result;
+        } else if (resolved instanceof COSArray) {
+            final COSArray source = (COSArray) resolved;
+            final COSArray result = new COSArray();
+            for (int i = 0; i < source.size(); i++) {
+                result.add(detach(source.get(i), depth + 1));
+            }
+            return result;
+        }
+        return resolved == null ? COSNull.NULL : resolved;
+    }
+
+    private static void copyRawData(final COSStream source, final COSStream target) throws IOException {
+        try (InputStream in = source.createRawInputStream(); OutputStream out = target.createRawOutputStream()) {
+            in.transferTo(out);
+        }
+    }
+}
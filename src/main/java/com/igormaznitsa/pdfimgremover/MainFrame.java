@@ -18,6 +18,7 @@ package com.igormaznitsa.pdfimgremover;
 import com.igormaznitsa.pdfimgremover.ImageFinderStreamEngine.FoundImage;
 import java.awt.Color;
 import java.awt.Desktop;
+import java.awt.FlowLayout;
 import java.awt.GridLayout;
 import java.awt.HeadlessException;
 import java.awt.Image;
@@ -29,6 +30,7 @@ import java.awt.dnd.DnDConstants;
 import java.awt.dnd.DropTarget;
 import java.awt.dnd.DropTargetDropEvent;
 import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
@@ -39,24 +41,40 @@ import java.awt.image.DataBufferDouble;
 import java.awt.image.DataBufferFloat;
 import java.awt.image.DataBufferInt;
 import java.awt.image.DataBufferShort;
-import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
-import java.util.function.Consumer;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -64,11 +82,16 @@ import javax.imageio.ImageIO;
 import javax.swing.Box;
 import javax.swing.ButtonGroup;
 import javax.swing.ImageIcon;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
+import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JProgressBar;
 import javax.swing.JRadioButtonMenuItem;
+import javax.swing.JSpinner;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
@@ -77,7 +100,10 @@ import javax.swing.filechooser.FileFilter;
 import javax.swing.tree.TreePath;
 import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
@@ -86,6 +112,33 @@ import org.apache.pdfbox.rendering.PDFRenderer;
 public class MainFrame extends javax.swing.JFrame {
 
     private boolean saveRequired = false;
+    private final DocumentChangeTracker changeTracker = new DocumentChangeTracker();
+    /**
+     * Reversible changes of executed operations for undo and redo.
+     */
+    private final EditOperationLog operationLog = new EditOperationLog(EditOperationLog.DEFAULT_MAX_OPERATIONS);
+    /**
+     * Write-ahead journal of operations applied to the opened file, null if
+     * there is no opened file or the journal can't be written.
+     */
+    private OperationJournal journal;
+    private final DocumentIndexCache indexCache = new DocumentIndexCache(DocumentIndexCache.getDefaultFolder(),
+            Long.parseLong(ApplicationPreferences.INSTANCE.getKey(ApplicationPreferences.PROPERTY_INDEX_CACHE_MB, Integer.toString(DocumentIndexCache.DEFAULT_MAX_MB))) * 1024L * 1024L);
+    /**
+     * Index of the opened file, it is valid while page order of the document is not changed.
+     */
+    private volatile DocumentIndex documentIndex;
+    /**
+     * Provider of independent readers of the opened file, it is used for
+     * parallel processing by own document instances while the document is the
+     * same as the file.
+     */
+    private volatile ShardedPageProcessor.SourceProvider documentSource;
+    /**
+     * Mapping table of queued operations, executed together in one pass.
+     */
+    private final List<ImageNamePair> queuedOperationPairs = new ArrayList<>();
+    private final List<String> queuedOperationTitles = new ArrayList<>();
 
     private final Image applicationIcon;
     private final ScalableImage scalableImage;
@@ -168,7 +221,7 @@ public class MainFrame extends javax.swing.JFrame {
             @Override
             public boolean dispatchKeyEvent(KeyEvent e) {
                 boolean result = false;
-                if (!e.isConsumed() && e.getModifiersEx() == 0) {
+                if (!e.isConsumed() && e.getModifiersEx() == 0 && !isBackgroundTaskActive()) {
                     final boolean released = e.getID() == KeyEvent.KEY_RELEASED;
                     switch (e.getKeyCode()) {
                         case KeyEvent.VK_PAGE_DOWN: {
@@ -245,11 +298,16 @@ public class MainFrame extends javax.swing.JFrame {
         this.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(final WindowEvent e) {
+                if (activeSaveWorker != null) {
+                    JOptionPane.showMessageDialog(MainFrame.this, "Document is being saved, wait for end of save or cancel it", "Save in progress", JOptionPane.WARNING_MESSAGE);
+                    return;
+                }
                 if (saveRequired) {
                     if (JOptionPane.showConfirmDialog(MainFrame.this, "There is unsaved file. Dou you really want close application?", "Close application", JOptionPane.OK_CANCEL_OPTION) == JOptionPane.CANCEL_OPTION) {
                         return;
                     }
                 }
+                closeJournal(true);
                 try {
                     if (document != null) {
                         document.close();
@@ -266,6 +324,9 @@ public class MainFrame extends javax.swing.JFrame {
 
         glassPanel.setBackground(new Color(213, 33, 255, 123));
         glassPanel.setVisible(false);
+        // block mouse input to components under glass pane during background tasks
+        glassPanel.addMouseListener(new MouseAdapter() {
+        });
 
         this.progressBar = new JProgressBar(0, 100);
         this.progressBar.setStringPainted(true);
@@ -278,8 +339,20 @@ public class MainFrame extends javax.swing.JFrame {
         glassPanel.add(this.progressBar);
         glassPanel.add(Box.createGlue());
 
+        this.buttonCancelProgress = new JButton("Cancel");
+        this.buttonCancelProgress.addActionListener(e -> {
+            final Runnable action = this.progressCancelAction;
+            if (action != null) {
+                this.buttonCancelProgress.setEnabled(false);
+                action.run();
+            }
+        });
+        final JPanel cancelPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        cancelPanel.setOpaque(false);
+        cancelPanel.add(this.buttonCancelProgress);
+
         glassPanel.add(Box.createGlue());
-        glassPanel.add(Box.createGlue());
+        glassPanel.add(cancelPanel);
         glassPanel.add(Box.createGlue());
 
         this.setGlassPane(glassPanel);
@@ -293,7 +366,7 @@ public class MainFrame extends javax.swing.JFrame {
                         final File file = extractDropFile(dtde);
                         MainFrame.this.log("drop: " + dtde);
                         dtde.dropComplete(true);
-                        if (file != null && file.isFile()) {
+                        if (file != null && file.isFile() && !MainFrame.this.isBackgroundTaskActive()) {
                             if (MainFrame.this.saveRequired && JOptionPane.showConfirmDialog(MainFrame.this, "Current document is unsaved. Open new file?", "Unsaved changes", JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE) == JOptionPane.CANCEL_OPTION) {
                                 return;
                             }
@@ -326,7 +399,28 @@ public class MainFrame extends javax.swing.JFrame {
         }
     }
 
+    /**
+     * Check that both files are the same file in file system, links and case
+     * insensitive names are resolved for existing files.
+     */
+    private static boolean isSameFile(final File one, final File two) {
+        if (one == null || two == null) {
+            return false;
+        }
+        if (one.exists() && two.exists()) {
+            try {
+                return Files.isSameFile(one.toPath(), two.toPath());
+            } catch (IOException ex) {
+                // compare paths as they are
+            }
+        }
+        return one.getAbsoluteFile().equals(two.getAbsoluteFile());
+    }
+
     private final JProgressBar progressBar;
+    private final JButton buttonCancelProgress;
+    private volatile Runnable progressCancelAction;
+    private SwingWorker<Boolean, Long> activeSaveWorker;
 
     @SuppressWarnings("unchecked")
     // <editor-fold defaultstate="collapsed" desc="Generated Code">//GEN-BEGIN:initComponents
@@ -347,15 +441,26 @@ public class MainFrame extends javax.swing.JFrame {
         menuFile = new javax.swing.JMenu();
         menuFileOpen = new javax.swing.JMenuItem();
         menuFileSaveAs = new javax.swing.JMenuItem();
+        menuFileSaveIncremental = new javax.swing.JMenuItem();
         menuFileSeparator = new javax.swing.JPopupMenu.Separator();
         menuFileExit = new javax.swing.JMenuItem();
         menuEdit = new javax.swing.JMenu();
+        menuEditUndo = new javax.swing.JMenuItem();
+        menuEditRedo = new javax.swing.JMenuItem();
+        menuEditUndoSeparator = new javax.swing.JPopupMenu.Separator();
         menuReorderPages = new javax.swing.JMenuItem();
         menuEditShowImage = new javax.swing.JMenuItem();
         menuEditReplaceByFileForName = new javax.swing.JMenuItem();
         menuEditReplaceByFileForImage = new javax.swing.JMenuItem();
         menuEditHidePictureForName = new javax.swing.JMenuItem();
         menuEditHidePictureForImage = new javax.swing.JMenuItem();
+        menuEditQueueSeparator = new javax.swing.JPopupMenu.Separator();
+        menuEditQueueOperations = new javax.swing.JCheckBoxMenuItem();
+        menuEditRunQueuedOperations = new javax.swing.JMenuItem();
+        menuEditClearQueuedOperations = new javax.swing.JMenuItem();
+        menuEditSeparator = new javax.swing.JPopupMenu.Separator();
+        menuEditDeduplicateImages = new javax.swing.JMenuItem();
+        menuEditDownsampleImages = new javax.swing.JMenuItem();
         menuLookAndFeel = new javax.swing.JMenu();
         menuHelp = new javax.swing.JMenu();
         menuHelpAbout = new javax.swing.JMenuItem();
@@ -455,6 +560,16 @@ public class MainFrame extends javax.swing.JFrame {
             }
         });
         menuFile.add(menuFileSaveAs);
+
+        menuFileSaveIncremental.setIcon(new javax.swing.ImageIcon(getClass().getResource("/icons/file_save_as.png"))); // NOI18N
+        menuFileSaveIncremental.setText("Save incrementally");
+        menuFileSaveIncremental.setToolTipText("Append only changed objects to a copy of the original file");
+        menuFileSaveIncremental.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                menuFileSaveIncrementalActionPerformed(evt);
+            }
+        });
+        menuFile.add(menuFileSaveIncremental);
         menuFile.add(menuFileSeparator);
 
         menuFileExit.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_F4, java.awt.event.InputEvent.ALT_DOWN_MASK));
@@ -481,6 +596,27 @@ public class MainFrame extends javax.swing.JFrame {
             }
         });
 
+        menuEditUndo.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_Z, java.awt.event.InputEvent.CTRL_DOWN_MASK));
+        menuEditUndo.setText("Undo");
+        menuEditUndo.setToolTipText("Revert the last operation");
+        menuEditUndo.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                menuEditUndoActionPerformed(evt);
+            }
+        });
+        menuEdit.add(menuEditUndo);
+
+        menuEditRedo.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_Y, java.awt.event.InputEvent.CTRL_DOWN_MASK));
+        menuEditRedo.setText("Redo");
+        menuEditRedo.setToolTipText("Apply the last reverted operation again");
+        menuEditRedo.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                menuEditRedoActionPerformed(evt);
+            }
+        });
+        menuEdit.add(menuEditRedo);
+        menuEdit.add(menuEditUndoSeparator);
+
         menuReorderPages.setIcon(new javax.swing.ImageIcon(getClass().getResource("/icons/book_edit.png"))); // NOI18N
         menuReorderPages.setText("Reorder pages");
         menuReorderPages.addActionListener(new java.awt.event.ActionListener() {
@@ -539,6 +675,51 @@ public class MainFrame extends javax.swing.JFrame {
             }
         });
         menuEdit.add(menuEditHidePictureForImage);
+        menuEdit.add(menuEditQueueSeparator);
+
+        menuEditQueueOperations.setText("Queue operations");
+        menuEditQueueOperations.setToolTipText("Collect find and hide/replace operations to execute them together in one pass over pages");
+        menuEdit.add(menuEditQueueOperations);
+
+        menuEditRunQueuedOperations.setIcon(new javax.swing.ImageIcon(getClass().getResource("/icons/table_replace.png"))); // NOI18N
+        menuEditRunQueuedOperations.setText("Run queued operations");
+        menuEditRunQueuedOperations.setToolTipText("Execute all queued operations in one pass over pages");
+        menuEditRunQueuedOperations.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                menuEditRunQueuedOperationsActionPerformed(evt);
+            }
+        });
+        menuEdit.add(menuEditRunQueuedOperations);
+
+        menuEditClearQueuedOperations.setText("Clear queued operations");
+        menuEditClearQueuedOperations.setToolTipText("Remove all queued operations");
+        menuEditClearQueuedOperations.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                menuEditClearQueuedOperationsActionPerformed(evt);
+            }
+        });
+        menuEdit.add(menuEditClearQueuedOperations);
+        menuEdit.add(menuEditSeparator);
+
+        menuEditDeduplicateImages.setIcon(new javax.swing.ImageIcon(getClass().getResource("/icons/image.png"))); // NOI18N
+        menuEditDeduplicateImages.setText("Deduplicate images");
+        menuEditDeduplicateImages.setToolTipText("Find byte-identical images and keep only one copy of each");
+        menuEditDeduplicateImages.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                menuEditDeduplicateImagesActionPerformed(evt);
+            }
+        });
+        menuEdit.add(menuEditDeduplicateImages);
+
+        menuEditDownsampleImages.setIcon(new javax.swing.ImageIcon(getClass().getResource("/icons/image.png"))); // NOI18N
+        menuEditDownsampleImages.setText("Downsample images");
+        menuEditDownsampleImages.setToolTipText("Resample and recompress images placed with resolution over threshold");
+        menuEditDownsampleImages.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                menuEditDownsampleImagesActionPerformed(evt);
+            }
+        });
+        menuEdit.add(menuEditDownsampleImages);
 
         mainMenu.add(menuEdit);
 
@@ -569,35 +750,105 @@ public class MainFrame extends javax.swing.JFrame {
     private File documentFile;
     private PDDocument document;
     private PDFRenderer renderer;
+    private DocumentExecutor documentExecutor;
+    // opened file is read through memory mapping
+    private boolean documentMapped;
+    // number of the last request of page render, results of older requests are dropped
+    private long pageRenderRequest;
+
+    private void logResourceCacheStatistics() {
+        if (this.document != null && this.document.getResourceCache() instanceof BoundedResourceCache) {
+            this.log("Resource cache: " + ((BoundedResourceCache) this.document.getResourceCache()).getStatistics());
+        }
+    }
 
+    /**
+     * Request render of the current page. The page is rendered by a read task
+     * of the document executor and shown on EDT only if there is no newer
+     * request, if the document has been changed during render then the page
+     * is requested again.
+     */
     private void updateVisiblePdfPage() {
-        Integer pageNumber = (Integer) ((SpinnerNumberModel) this.spinnerPage.getModel()).getValue() - 1;
+        final int pageNumber = (Integer) ((SpinnerNumberModel) this.spinnerPage.getModel()).getValue() - 1;
+        final long request = ++this.pageRenderRequest;
         if (this.document == null || pageNumber < 0) {
             this.pageTree.setModel(new PageTreeModel(null, null));
             scalableImage.setImage(null, true);
-        } else {
-            try {
-                scalableImage.setImage(this.renderer.renderImage(pageNumber), true);
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(this, "Can't render page", "Error", JOptionPane.ERROR_MESSAGE);
-            } finally {
-                this.pageTree.setModel(new PageTreeModel(this.document, this.document.getPage(pageNumber)));
-            }
+            this.mainScrollPane.invalidate();
+            this.mainScrollPane.repaint();
+            return;
         }
-        this.mainScrollPane.invalidate();
-        this.mainScrollPane.repaint();
+        final PDDocument renderedDocument = this.document;
+        final PDFRenderer pageRenderer = this.renderer;
+        final DocumentExecutor executor = this.documentExecutor;
+        executor.submitRead(() -> {
+            final long epoch = executor.getEpoch();
+            BufferedImage image = null;
+            Exception error = null;
+            PageTreeModel model = null;
+            synchronized (renderedDocument) {
+                try {
+                    image = pageRenderer.renderImage(pageNumber);
+                } catch (Exception ex) {
+                    error = ex;
+                }
+                try {
+                    model = new PageTreeModel(renderedDocument, renderedDocument.getPage(pageNumber));
+                } catch (RuntimeException ex) {
+                    // the document is closed or changed
+                    error = error == null ? ex : error;
+                }
+            }
+            final BufferedImage renderedImage = image;
+            final Exception renderError = error;
+            final PageTreeModel renderedModel = model;
+            SwingUtilities.invokeLater(() -> {
+                if (request != this.pageRenderRequest || renderedDocument != this.document) {
+                    return;
+                }
+                if (epoch != executor.getEpoch()) {
+                    this.updateVisiblePdfPage();
+                    return;
+                }
+                if (renderError == null) {
+                    scalableImage.setImage(renderedImage, true);
+                } else {
+                    JOptionPane.showMessageDialog(this, "Can't render page", "Error", JOptionPane.ERROR_MESSAGE);
+                }
+                if (renderedModel != null) {
+                    this.pageTree.setModel(renderedModel);
+                }
+                this.mainScrollPane.invalidate();
+                this.mainScrollPane.repaint();
+            });
+            return null;
+        });
     }
 
     private void activateProgress() {
+        this.activateProgress(null);
+    }
+
+    private void activateProgress(final Runnable cancelAction) {
+        this.progressCancelAction = cancelAction;
+        this.buttonCancelProgress.setVisible(cancelAction != null);
+        this.buttonCancelProgress.setEnabled(cancelAction != null);
         this.updateProgressBar(0);
         this.getGlassPane().setVisible(true);
         this.mainMenu.setEnabled(false);
+        for (int i = 0; i < this.mainMenu.getMenuCount(); i++) {
+            this.mainMenu.getMenu(i).setEnabled(false);
+        }
     }
 
     private void deactivateProgress() {
+        this.progressCancelAction = null;
         this.progressBar.setValue(0);
         this.getGlassPane().setVisible(false);
         this.mainMenu.setEnabled(true);
+        for (int i = 0; i < this.mainMenu.getMenuCount(); i++) {
+            this.mainMenu.getMenu(i).setEnabled(true);
+        }
     }
 
     private void initLookAndFillMenu() {
@@ -625,10 +876,18 @@ public class MainFrame extends javax.swing.JFrame {
     }
 
     private void resetDocument() {
+        this.closeDocumentExecutor();
         this.document = null;
+        this.clearQueuedOperations();
+        this.operationLog.clear();
+        this.closeJournal(true);
+        this.documentIndex = null;
+        this.documentSource = null;
         this.renderer = null;
         this.documentFile = null;
+        this.documentMapped = false;
         this.saveRequired = false;
+        this.changeTracker.reset();
         this.scalableImage.setImage(null, true);
 
         final SpinnerNumberModel spinnerModel = new SpinnerNumberModel(0, 0, 0, 0);
@@ -645,13 +904,36 @@ public class MainFrame extends javax.swing.JFrame {
     private void replaceDocument(final PDDocument newDocument) throws IOException {
         if (this.document == newDocument) return;
         
+        this.closeDocumentExecutor();
         if (this.document != null) {
-            this.document.close();
+            this.logResourceCacheStatistics();
+            try {
+                this.document.close();
+            } catch (IOException ex) {
+                // the new document must be installed anyway, otherwise it is leaked
+                this.log("Can't close previous document", ex);
+            }
         }
         
         this.document = newDocument;
+        this.documentExecutor = new DocumentExecutor(DocumentExecutor.DEFAULT_READ_THREADS);
+        this.clearQueuedOperations();
+        this.operationLog.clear();
+        // previous document is closed normally, its operations are not needed anymore
+        this.closeJournal(true);
         this.renderer = new PDFRenderer(this.document);
+        this.updatePageSpinner();
+    }
+
+    private void closeDocumentExecutor() {
+        if (this.documentExecutor != null) {
+            this.log("Document executor: " + this.documentExecutor.describeStatistics());
+            this.documentExecutor.close();
+            this.documentExecutor = null;
+        }
+    }
 
+    private void updatePageSpinner() {
         final SpinnerNumberModel spinnerModel;
         if (document.getNumberOfPages() == 0) {
             spinnerModel = new SpinnerNumberModel(0, 0, 0, 1);
@@ -666,25 +948,313 @@ public class MainFrame extends javax.swing.JFrame {
         this.spinnerPage.setModel(spinnerModel);
     }
     
-    private boolean openFile(final File file) {
+    private static void resetHeapPeakUsage() {
+        ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(x -> x.getType() == MemoryType.HEAP)
+                .forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    private static long getHeapPeakUsage() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(x -> x.getType() == MemoryType.HEAP)
+                .mapToLong(x -> x.getPeakUsage().getUsed())
+                .sum();
+    }
+
+    private boolean isBackgroundTaskActive() {
+        return this.getGlassPane().isVisible();
+    }
+
+    /**
+     * Start background load of document. The first page is shown as soon as
+     * the document structure is parsed, page tree is indexed after that, and
+     * only then the document becomes current one.
+     */
+    private void openFile(final File file) {
         this.lastOpenedFile = file;
-        try {
-            final PDDocument openedDocument = Loader.loadPDF(this.lastOpenedFile);
-            this.replaceDocument(openedDocument);
+        final long fileLength = Math.max(1L, file.length());
+        final AtomicBoolean cancelRequested = new AtomicBoolean();
+        final boolean memoryMapped = Boolean.parseBoolean(ApplicationPreferences.INSTANCE.getKey(ApplicationPreferences.PROPERTY_MEMORY_MAPPED_INPUT, "false"));
+        final StreamCacheMode streamCacheMode = StreamCacheMode.findForName(ApplicationPreferences.INSTANCE.getKey(ApplicationPreferences.PROPERTY_STREAM_CACHE_MODE, null), StreamCacheMode.AUTO);
+        final int streamCacheLimitMb = Integer.parseInt(ApplicationPreferences.INSTANCE.getKey(ApplicationPreferences.PROPERTY_STREAM_CACHE_MEMORY_LIMIT_MB, "256"));
+        final int resourceCacheMb = Integer.parseInt(ApplicationPreferences.INSTANCE.getKey(ApplicationPreferences.PROPERTY_RESOURCE_CACHE_MB, Integer.toString(BoundedResourceCache.DEFAULT_MAX_MB)));
+        final long startTime = System.currentTimeMillis();
+        resetHeapPeakUsage();
+
+        final SwingWorker<PDDocument, BufferedImage> worker = new SwingWorker<PDDocument, BufferedImage>() {
+            private volatile Throwable error = null;
+            private volatile DocumentIndex index = null;
+            private volatile boolean indexFromCache = false;
+            private volatile ShardedPageProcessor.SourceProvider sourceProvider = null;
+            private long phaseStart = System.currentTimeMillis();
+
+            /**
+             * Report completed load phase, bytes read by lazy parser don't
+             * show how far the load has got, so progress is made by phases.
+             */
+            private void completePhase(final String phase, final int progress) {
+                final long now = System.currentTimeMillis();
+                log("Load of " + file.getName() + ": " + phase + " in " + (now - this.phaseStart) + " ms");
+                this.phaseStart = now;
+                this.setProgress(progress);
+            }
 
-            this.documentFile = this.lastOpenedFile;
-            this.saveRequired = false;
-            this.updateTitle();
-            this.log("Loaded file: " + this.lastOpenedFile.getName());
-            return true;
-        } catch (IOException ex) {
-            this.log("Error load file: " + this.lastOpenedFile.getName(), ex);
-            JOptionPane.showMessageDialog(this, "Can't load file for error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            this.resetDocument();
-            return false;
-        } finally {
-            this.updateVisiblePdfPage();
+            @Override
+            protected PDDocument doInBackground() throws Exception {
+                final long indexLoadStart = System.currentTimeMillis();
+                this.index = indexCache.load(file);
+                this.indexFromCache = this.index != null;
+                if (this.indexFromCache) {
+                    log("Loaded index of " + file.getName() + " from cache in " + (System.currentTimeMillis() - indexLoadStart) + " ms, images: "
+                            + this.index.getImages().size() + ", thumbnails: " + this.index.getThumbnailCount());
+                }
+                final RandomAccessRead fileSource = memoryMapped ? new MappedRandomAccessRead(file) : new RandomAccessReadBufferedFile(file);
+                this.sourceProvider = memoryMapped ? ((MappedRandomAccessRead) fileSource)::duplicate : () -> new RandomAccessReadBufferedFile(file);
+                final ProgressRandomAccessRead source = new ProgressRandomAccessRead(fileSource, null, cancelRequested::get);
+                this.completePhase("opened file", 10);
+                PDDocument loaded = null;
+                try {
+                    // mode and limit are resolved once, so the logged values are the used ones
+                    final StreamCacheMode resolvedCacheMode = streamCacheMode.resolve(fileLength);
+                    final long cacheMemoryLimit = streamCacheMode.getMemoryLimitBytes(streamCacheLimitMb);
+                    log("Stream cache for " + file.getName() + ": " + resolvedCacheMode
+                            + (resolvedCacheMode == StreamCacheMode.MIXED ? ", heap limit " + (cacheMemoryLimit / (1024L * 1024L)) + " MB" : "")
+                            + (streamCacheMode == StreamCacheMode.AUTO ? " (auto selected, max heap " + (Runtime.getRuntime().maxMemory() / (1024L * 1024L)) + " MB)" : ""));
+                    loaded = Loader.loadPDF(source, resolvedCacheMode.makeStreamCache(cacheMemoryLimit));
+                    loaded.setResourceCache(new BoundedResourceCache(BoundedResourceCache.DEFAULT_MAX_ENTRIES, resourceCacheMb * 1024L * 1024L));
+                    this.completePhase("parsed cross reference table", 50);
+                    final int pages = loaded.getNumberOfPages();
+                    this.completePhase("counted " + pages + " page(s)", 70);
+                    if (pages > 0) {
+                        this.publish(new PDFRenderer(loaded).renderImage(0));
+                        this.completePhase("rendered first page", 100);
+                    }
+                    source.stopTracking();
+                    return loaded;
+                } catch (Exception ex) {
+                    this.error = ex;
+                    if (loaded == null) {
+                        source.close();
+                    } else {
+                        loaded.close();
+                    }
+                    return null;
+                }
+            }
+
+            @Override
+            protected void process(final List<BufferedImage> chunks) {
+                scalableImage.setImage(chunks.get(chunks.size() - 1), true);
+                mainScrollPane.invalidate();
+                mainScrollPane.repaint();
+            }
+
+            @Override
+            protected void done() {
+                deactivateProgress();
+                try {
+                    if (this.error == null) {
+                        replaceDocument(this.get());
+                        documentFile = file;
+                        documentMapped = memoryMapped;
+                        documentIndex = this.index;
+                        documentSource = this.sourceProvider;
+                        saveRequired = false;
+                        changeTracker.reset();
+                        updateTitle();
+                        if (this.indexFromCache) {
+                            verifyDocumentIndex(file, this.index, true);
+                        } else {
+                            // pages are indexed after the first page is shown, the index is used only when it is ready
+                            buildDocumentIndex(file, document, this.sourceProvider);
+                        }
+                        openJournal(file);
+                        log("Loaded file: " + file.getName() + " through " + (memoryMapped ? "memory mapped" : "buffered") + " input in "
+                                + (System.currentTimeMillis() - startTime) + " ms, peak heap " + (getHeapPeakUsage() / (1024L * 1024L)) + " MB");
+                    } else if (this.error instanceof InterruptedIOException) {
+                        log("Load of " + file.getName() + " has been cancelled");
+                    } else {
+                        // the current document is kept
+                        log("Error load file: " + file.getName(), this.error);
+                        JOptionPane.showMessageDialog(MainFrame.this, "Can't load file for error: " + this.error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                } catch (Exception ex) {
+                    log("Error load file: " + file.getName(), ex);
+                    JOptionPane.showMessageDialog(MainFrame.this, "Can't load file for error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                } finally {
+                    updateVisiblePdfPage();
+                }
+            }
+        };
+        worker.getPropertyChangeSupport().addPropertyChangeListener("progress", e -> this.updateProgressBar((Integer) e.getNewValue()));
+
+        this.activateProgress(() -> {
+            log("Requested cancel of load");
+            cancelRequested.set(true);
+        });
+        worker.execute();
+    }
+
+    /**
+     * Build index of opened file in background. Several workers index their
+     * own instances of the file, a single worker indexes the opened document
+     * page by page through read tasks and stops if the document is changed,
+     * because the index must describe the file. The index is installed only
+     * if the same file is still opened and not saved.
+     */
+    private void buildDocumentIndex(final File file, final PDDocument indexedDocument, final ShardedPageProcessor.SourceProvider source) {
+        final DocumentExecutor executor = this.documentExecutor;
+        final long epoch = executor.getEpoch();
+        final BooleanSupplier cancelled = () -> this.documentSource != source;
+        new SwingWorker<DocumentIndex, Void>() {
+            @Override
+            protected DocumentIndex doInBackground() throws Exception {
+                final long start = System.currentTimeMillis();
+                final int pages = executor.read(() -> {
+                    synchronized (indexedDocument) {
+                        return indexedDocument.getNumberOfPages();
+                    }
+                });
+                final DocumentIndex index = new DocumentIndex(file.length(), file.lastModified(), pages, PageThumbnailCache.DEFAULT_THUMBNAIL_SIZE);
+                final int threads = ShardedPageProcessor.calcThreads(pages, Runtime.getRuntime().availableProcessors());
+                if (threads > 1) {
+                    new ParallelDocumentIndexer(source, threads).index(index, cancelled, indexed -> {
+                    });
+                } else {
+                    final ImageFinderStreamEngine finder = new ImageFinderStreamEngine();
+                    for (int i = 0; i < pages; i++) {
+                        final int pageIndex = i;
+                        executor.read(() -> {
+                            if (cancelled.getAsBoolean() || executor.getEpoch() != epoch) {
+                                throw new InterruptedIOException("Document has been changed");
+                            }
+                            synchronized (indexedDocument) {
+                                index.indexPage(pageIndex, indexedDocument.getPage(pageIndex), finder);
+                            }
+                            return null;
+                        });
+                    }
+                    index.completeIndexing();
+                }
+                log("Indexed " + pages + " page(s) of " + file.getName() + " in background by " + threads + " thread(s) in " + (System.currentTimeMillis() - start) + " ms");
+                return index;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    final DocumentIndex index = this.get();
+                    if (documentSource == source) {
+                        documentIndex = index;
+                        verifyDocumentIndex(file, index, false);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof InterruptedIOException) {
+                        log("Background index of " + file.getName() + " is dropped: " + ex.getCause().getMessage());
+                    } else {
+                        log("Can't index " + file.getName(), ex.getCause());
+                    }
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Calculate content hash of opened file in background. Index loaded from
+     * cache is dropped if the hash is changed, new index gets the hash and it
+     * is stored into cache.
+     */
+    private void verifyDocumentIndex(final File file, final DocumentIndex index, final boolean fromCache) {
+        new SwingWorker<byte[], Void>() {
+            @Override
+            protected byte[] doInBackground() throws Exception {
+                return DocumentIndexCache.calcContentHash(file, () -> documentIndex != index);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    final byte[] hash = this.get();
+                    if (!fromCache) {
+                        index.setContentHash(hash);
+                        storeDocumentIndex(file, index);
+                    } else if (!Arrays.equals(hash, index.getContentHash())) {
+                        log("Content of " + file.getName() + " doesn't match cached index, index is dropped");
+                        indexCache.remove(file);
+                        if (documentIndex == index) {
+                            documentIndex = null;
+                        }
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    if (!(ex.getCause() instanceof InterruptedIOException)) {
+                        log("Can't check index of " + file.getName(), ex.getCause());
+                    }
+                }
+            }
+        }.execute();
+    }
+
+    private void storeDocumentIndex(final File file, final DocumentIndex index) {
+        if (index.getContentHash() == null || !index.isChanged()) {
+            return;
         }
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                indexCache.store(file, index);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    this.get();
+                    log("Stored index of " + file.getName() + ", images: " + index.getImages().size() + ", thumbnails: " + index.getThumbnailCount());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    log("Can't store index of " + file.getName(), ex.getCause());
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Remove pages which have no images according to the document index. If
+     * all images are found by names then pages without images with such names
+     * are removed too, names of images are kept by replace operations, so the
+     * index is valid for them while page order is not changed.
+     *
+     * @param pages page indexes, must not be null
+     * @param pairs image pairs to be found, must not be null
+     * @return filtered page indexes or the same list if there is no index
+     */
+    private List<Integer> filterPagesWithImages(final List<Integer> pages, final List<ImageNamePair> pairs) {
+        final DocumentIndex index = this.documentIndex;
+        if (index == null || index.getPageCount() != this.document.getNumberOfPages()) {
+            return pages;
+        }
+        final List<Integer> result;
+        if (!pairs.isEmpty() && pairs.stream().noneMatch(x -> x.byImage)) {
+            final Set<String> names = pairs.stream().map(x -> x.name.getName()).collect(Collectors.toSet());
+            final BitSet pagesWithNames = new BitSet(index.getPageCount());
+            for (final DocumentIndex.ImageEntry entry : index.getImages()) {
+                if (names.contains(entry.name)) {
+                    pagesWithNames.set(entry.pageIndex);
+                }
+            }
+            result = pages.stream().filter(pagesWithNames::get).collect(Collectors.toList());
+        } else {
+            result = pages.stream().filter(index::hasImages).collect(Collectors.toList());
+        }
+        if (result.size() != pages.size()) {
+            this.log("Document index allows to skip " + (pages.size() - result.size()) + " page(s) without matching images");
+        }
+        return result;
     }
 
     private void menuFileOpenActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_menuFileOpenActionPerformed
@@ -701,7 +1271,28 @@ public class MainFrame extends javax.swing.JFrame {
             fileOpenDialog.setMultiSelectionEnabled(false);
             fileOpenDialog.setDialogTitle("Open PDF document");
 
+            final JCheckBox checkBoxMemoryMapped = new JCheckBox("Memory-mapped input",
+                    Boolean.parseBoolean(ApplicationPreferences.INSTANCE.getKey(ApplicationPreferences.PROPERTY_MEMORY_MAPPED_INPUT, "false")));
+            checkBoxMemoryMapped.setToolTipText("Map file into memory instead of buffered read, recommended for very large files");
+            final JComboBox<StreamCacheMode> comboStreamCache = new JComboBox<>(StreamCacheMode.values());
+            comboStreamCache.setSelectedItem(StreamCacheMode.findForName(ApplicationPreferences.INSTANCE.getKey(ApplicationPreferences.PROPERTY_STREAM_CACHE_MODE, null), StreamCacheMode.AUTO));
+            comboStreamCache.setToolTipText("Storage for decoded and new streams of the document");
+            final JSpinner spinnerCacheLimit = new JSpinner(new SpinnerNumberModel(
+                    Integer.parseInt(ApplicationPreferences.INSTANCE.getKey(ApplicationPreferences.PROPERTY_STREAM_CACHE_MEMORY_LIMIT_MB, "256")), 16, 65536, 16));
+            spinnerCacheLimit.setToolTipText("Heap limit in MB for mixed stream cache");
+
+            final JPanel accessoryPanel = new JPanel(new GridLayout(5, 1, 4, 4));
+            accessoryPanel.add(checkBoxMemoryMapped);
+            accessoryPanel.add(new JLabel("Stream cache:"));
+            accessoryPanel.add(comboStreamCache);
+            accessoryPanel.add(new JLabel("Memory limit, MB:"));
+            accessoryPanel.add(spinnerCacheLimit);
+            fileOpenDialog.setAccessory(accessoryPanel);
+
             if (fileOpenDialog.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+                ApplicationPreferences.INSTANCE.setKey(ApplicationPreferences.PROPERTY_MEMORY_MAPPED_INPUT, Boolean.toString(checkBoxMemoryMapped.isSelected()));
+                ApplicationPreferences.INSTANCE.setKey(ApplicationPreferences.PROPERTY_STREAM_CACHE_MODE, ((StreamCacheMode) comboStreamCache.getSelectedItem()).name());
+                ApplicationPreferences.INSTANCE.setKey(ApplicationPreferences.PROPERTY_STREAM_CACHE_MEMORY_LIMIT_MB, spinnerCacheLimit.getValue().toString());
                 this.openFile(fileOpenDialog.getSelectedFile());
             }
         } catch (Exception ex) {
@@ -724,22 +1315,48 @@ public class MainFrame extends javax.swing.JFrame {
         return result;
     }
 
+    /**
+     * Entry of operation mapping table: image to be found and what to do with
+     * found image.
+     */
     private static class ImageNamePair {
 
+        private final int sourcePage;
         private final COSName name;
         private final PDImageXObject image;
         private final BufferedImage rawImage;
+        private final boolean byImage;
+        private final BufferedImage replacement;
+        private final HideMode hideMode;
         private PDImageXObject targetImage;
 
-        ImageNamePair(final COSName name, final PDImageXObject image) throws IOException {
+        /**
+         * Constructor.
+         *
+         * @param sourcePage index of page where the image is selected
+         * @param name resource name of the image
+         * @param image image to be found
+         * @param byImage true if the image is found by data, false if by name
+         * @param replacement image to replace found one, null to hide it
+         * @param hideMode mode to hide found image if there is no replacement
+         * @throws IOException if the image can't be decoded
+         */
+        ImageNamePair(final int sourcePage, final COSName name, final PDImageXObject image, final boolean byImage, final BufferedImage replacement, final HideMode hideMode) throws IOException {
+            this.sourcePage = sourcePage;
             this.name = name;
             this.image = image;
+            this.byImage = byImage;
+            this.replacement = replacement;
+            this.hideMode = replacement == null ? hideMode : HideMode.TRANSPARENT_IMAGE;
             this.targetImage = null;
-            this.rawImage = extractRawImage(image);
+            this.rawImage = byImage ? extractRawImage(image) : null;
+        }
+
+        boolean isInvocationRewrite() {
+            return this.replacement == null && this.hideMode != HideMode.TRANSPARENT_IMAGE;
         }
 
-        boolean isSimilarToImage(final PDImageXObject thatImage) throws IOException {
-            final BufferedImage thatRawImage = extractRawImage(thatImage);
+        boolean isSimilarToRawImage(final BufferedImage thatRawImage) {
             if (thatRawImage != null && this.rawImage != null) {
 
                 return thatRawImage == this.rawImage
@@ -753,7 +1370,7 @@ public class MainFrame extends javax.swing.JFrame {
 
         @Override
         public String toString() {
-            return "ImageNamePair{" + "name=" + name + ", image=" + image + ", rawImage=" + rawImage + '}';
+            return "ImageNamePair{" + "name=" + name + ", image=" + image + ", byImage=" + byImage + ", replacement=" + replacement + ", hideMode=" + hideMode + '}';
         }
 
     }
@@ -799,99 +1416,397 @@ public class MainFrame extends javax.swing.JFrame {
         return false;
     }
 
+    /**
+     * Receiver of result of image operation.
+     */
+    private interface ImageOperationCallback {
+
+        /**
+         * Called in event dispatch thread after end of operation.
+         *
+         * @param error error, null if the operation is completed
+         * @param counter number of changed images
+         * @param changes made changes, empty if they are rolled back
+         * @param partial true if the operation is cancelled and changes made
+         * before cancel are kept
+         */
+        void done(Throwable error, int counter, List<DocumentChange> changes, boolean partial);
+    }
+
+    /**
+     * Make worker to execute operations for images in one traversal of
+     * pages, every image pair has its own operation.
+     */
     private SwingWorker<Integer, Integer> makeSwingWorkerReplaceImage(
             final PDDocument document,
+            final ShardedPageProcessor.SourceProvider shardSource,
             final List<Integer> pageIndexes,
             final List<ImageNamePair> images,
-            final BufferedImage image,
-            final boolean byImage,
-            final Consumer<Integer> progressConsumer,
-            final Consumer<List<Integer>> publishConsumer,
-            final BiConsumer<Throwable, Integer> doneConsumer) throws IOException {
+            final BooleanSupplier cancelled,
+            final BiConsumer<Integer, String> progressConsumer,
+            final ImageOperationCallback doneConsumer) throws IOException {
+        final DocumentExecutor executor = this.documentExecutor;
         final SwingWorker<Integer, Integer> result = new SwingWorker<Integer, Integer>() {
 
             private volatile Throwable error = null;
             private volatile int counter = 0;
+            // cancel to be completed after answer of the user
+            private volatile InterruptedIOException cancel = null;
+            private volatile boolean partial = false;
+            private final ContentStreamRewriter rewriter = new ContentStreamRewriter(document, pageIndexes.size() == document.getNumberOfPages());
+            // made changes to roll back them if cancelled and to undo the operation
+            private final List<DocumentChange> changes = new ArrayList<>();
+            private final ProgressMeter progressMeter = new ProgressMeter(pageIndexes.size(), "pages", ProgressMeter.DEFAULT_UPDATES_PER_SECOND);
+            private final int[] widths = images.stream().mapToInt(x -> x.image.getWidth()).toArray();
+            private final int[] heights = images.stream().mapToInt(x -> x.image.getHeight()).toArray();
+            // pages without names of images in their resources can be skipped only if all images are found by names
+            private final boolean byNameOnly = images.stream().noneMatch(x -> x.byImage);
+            private final List<COSName> names = images.stream().map(x -> x.name).collect(Collectors.toList());
+            private final ResourcePatchTracker patchTracker = new ResourcePatchTracker();
+            // pages can be skipped by patched resources only if all changes are made through resources
+            private final boolean resourcesOnly = images.stream().noneMatch(ImageNamePair::isInvocationRewrite);
+
+            private void apply(final FoundImage foundImage, final ImageNamePair pair) {
+                if (pair.targetImage != null) {
+                    // shared resources are written once
+                    if (this.patchTracker.markPatched(foundImage.resources, foundImage.name)) {
+                        changeTracker.markResourcesChanged(foundImage.resources, foundImage.contentStream);
+                        this.changes.add(DictionaryEntryChange.replaceXObject(foundImage.resources, foundImage.name, pair.targetImage));
+                    }
+                    return;
+                }
+                changeTracker.markResourcesChanged(foundImage.resources, foundImage.contentStream);
+                // forms can be copied for the page, so resources drawing them are changed too
+                for (final ImageFinderStreamEngine.FormInvocation form : foundImage.forms) {
+                    changeTracker.markResourcesChanged(form.resources, form.contentStream);
+                }
+                if (pair.hideMode == HideMode.REMOVE_INVOCATION) {
+                    this.rewriter.addRemoval(foundImage);
+                } else {
+                    this.rewriter.addOptionalContent(foundImage);
+                }
+            }
+
+            /**
+             * Find the first pair matched by name for found image.
+             */
+            private int matchByName(final COSName name, final PDImageXObject foundImage) {
+                for (int i = 0; i < images.size(); i++) {
+                    final ImageNamePair pair = images.get(i);
+                    if (!pair.byImage && pair.name.equals(name) && foundImage.getWidth() == this.widths[i] && foundImage.getHeight() == this.heights[i]) {
+                        return i;
+                    }
+                }
+                return ImageMatchPipeline.NO_MATCH;
+            }
+
+            /**
+             * Check that found image can be matched by data of any pair.
+             */
+            private boolean isCandidateByImage(final PDImageXObject foundImage) {
+                for (int i = 0; i < images.size(); i++) {
+                    if (images.get(i).byImage && foundImage.getWidth() == this.widths[i] && foundImage.getHeight() == this.heights[i]) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            /**
+             * Find the first pair matched by decoded data of found image.
+             */
+            private int matchByImage(final BufferedImage rawImage) {
+                for (int i = 0; i < images.size(); i++) {
+                    final ImageNamePair pair = images.get(i);
+                    if (pair.byImage && pair.isSimilarToRawImage(rawImage)) {
+                        return i;
+                    }
+                }
+                return ImageMatchPipeline.NO_MATCH;
+            }
+
+            /**
+             * Find matching images by parallel workers on page shards of the
+             * opened file and apply changes to found images on the main
+             * document, where only matched pages are processed again.
+             */
+            private int processSharded(final ImageFinderStreamEngine finder, final int threads) throws IOException {
+                final long start = System.currentTimeMillis();
+                final Map<Integer, Map<COSName, ImageNamePair>> matches = new ConcurrentHashMap<>();
+                final int[] pages = pageIndexes.stream().mapToInt(Integer::intValue).toArray();
+                final ThreadLocal<ResourceNameFilter> pageFilters = ThreadLocal.withInitial(() -> new ResourceNameFilter(this.names));
+                final AtomicInteger skippedPages = new AtomicInteger();
+                // objects of the main document must not be touched from workers, so only precalculated sizes are used
+                new ShardedPageProcessor(shardSource, threads).process(pages, (pageIndex, page, pageFinder) -> {
+                    if (this.byNameOnly && !pageFilters.get().mayContain(page)) {
+                        skippedPages.incrementAndGet();
+                        return;
+                    }
+                    final Map<COSName, ImageNamePair> pageMatches = new HashMap<>();
+                    for (final FoundImage found : pageFinder.findAllImages(page)) {
+                        if (pageMatches.containsKey(found.name)) {
+                            continue;
+                        }
+                        int target = this.matchByName(found.name, found.image);
+                        if (target == ImageMatchPipeline.NO_MATCH && this.isCandidateByImage(found.image)) {
+                            target = this.matchByImage(extractRawImage(found.image));
+                        }
+                        if (target != ImageMatchPipeline.NO_MATCH) {
+                            pageMatches.put(found.name, images.get(target));
+                        }
+                    }
+                    if (!pageMatches.isEmpty()) {
+                        matches.put(pageIndex, pageMatches);
+                    }
+                }, cancelled, this::reportProgress);
+
+                for (final Map.Entry<Integer, Map<COSName, ImageNamePair>> entry : new TreeMap<>(matches).entrySet()) {
+                    if (cancelled.getAsBoolean()) {
+                        throw new InterruptedIOException("Cancelled by user");
+                    }
+                    final PDPage page = document.getPage(entry.getKey());
+                    if (this.resourcesOnly && this.patchTracker.isHandled(page)) {
+                        continue;
+                    }
+                    // every invocation of matched name is processed, the same name can be drawn from page and form resources
+                    for (final FoundImage found : finder.findAllImages(page)) {
+                        this.patchTracker.markScanned(found);
+                        final ImageNamePair match = entry.getValue().get(found.name);
+                        if (match != null) {
+                            this.apply(found, match);
+                            counter++;
+                        }
+                    }
+                }
+                log("replaceImage processed " + pages.length + " page(s) by " + threads + " shard worker(s) in " + (System.currentTimeMillis() - start)
+                        + " ms, matches on " + matches.size() + " page(s), skipped by resource names " + skippedPages.get() + " page(s)");
+                this.logPatchStatistics(0L, 0);
+                return pages.length;
+            }
+
+            /**
+             * Find images by names and by decoded content in one pass,
+             * candidates are decoded by parallel decoders and changes are
+             * applied by single writer.
+             */
+            private int processPipeline(final ImageFinderStreamEngine finder) throws IOException {
+                final long start = System.currentTimeMillis();
+                final ImageMatchPipeline pipeline = new ImageMatchPipeline(Runtime.getRuntime().availableProcessors(), this.resourcesOnly ? this.patchTracker : null);
+                final ResourceNameFilter pageFilter = new ResourceNameFilter(this.names);
+                pipeline.run(document, pageIndexes, finder,
+                        page -> !this.byNameOnly || pageFilter.mayContain(page),
+                        found -> this.matchByName(found.name, found.image),
+                        this::isCandidateByImage,
+                        candidate -> this.matchByImage(extractRawImage(candidate)),
+                        (found, target) -> {
+                            this.apply(found, images.get(target));
+                            counter++;
+                        },
+                        cancelled,
+                        this::reportProgress);
+                log("replaceImage processed " + pageIndexes.size() + " page(s) in " + (System.currentTimeMillis() - start) + " ms, decoded "
+                        + pipeline.getDecodedImages() + " candidate image(s) by " + pipeline.getDecoders() + " decoder(s), reused decisions for "
+                        + pipeline.getReusedDecisions() + " image(s), skipped by size " + pipeline.getSkippedImages() + " image(s), skipped by resource names "
+                        + pageFilter.getSkippedPages() + " page(s)");
+                this.logPatchStatistics(pipeline.getInterpretationMillis(), pipeline.getInterpretedPages());
+                if (pipeline.getDecodeErrors() > 0) {
+                    throw new IOException("Detected " + pipeline.getDecodeErrors() + " during image replace");
+                }
+                return pageIndexes.size();
+            }
+
+            /**
+             * Report number of processed pages, reports are throttled by
+             * time, can be called from several threads.
+             */
+            private void reportProgress(final int done) {
+                if (this.progressMeter.update(done)) {
+                    this.publish(done);
+                }
+            }
+
+            private void rewriteInvocations() throws IOException {
+                if (!this.rewriter.isEmpty()) {
+                    final int rewrittenOperators = this.rewriter.rewrite(this.changes);
+                    log("replaceImage rewrote " + rewrittenOperators + " image invocation(s) in content streams");
+                    if (images.stream().anyMatch(x -> x.isInvocationRewrite() && x.hideMode == HideMode.OPTIONAL_CONTENT)) {
+                        changeTracker.markChanged(document.getDocumentCatalog().getCOSObject());
+                        changeTracker.markChanged(document.getDocumentCatalog().getOCProperties().getCOSObject());
+                    }
+                }
+            }
+
+            /**
+             * Ask user to keep changes made before cancel, must not be called
+             * by the writer because readers would wait for the answer.
+             */
+            private boolean askKeepPartialChanges() throws Exception {
+                if (this.counter == 0) {
+                    return false;
+                }
+                final boolean[] answer = new boolean[1];
+                SwingUtilities.invokeAndWait(() -> answer[0] = JOptionPane.showConfirmDialog(MainFrame.this,
+                        "Operation is cancelled after " + this.counter + " change(s).\nKeep partial changes?",
+                        "Cancelled", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION);
+                return answer[0];
+            }
+
+            /**
+             * Revert changes made before cancel but keep them and registered
+             * invocations to apply them again if the user keeps them.
+             */
+            private void suspendChanges() throws IOException {
+                for (int i = this.changes.size() - 1; i >= 0; i--) {
+                    this.changes.get(i).revert();
+                }
+            }
+
+            /**
+             * Keep or drop changes suspended after cancel.
+             */
+            private void completeCancelled(final InterruptedIOException cancel, final boolean keep) throws IOException {
+                if (keep) {
+                    for (final DocumentChange change : this.changes) {
+                        change.apply();
+                    }
+                    this.rewriteInvocations();
+                    this.partial = true;
+                    log("replaceImage cancelled, kept " + this.counter + " change(s)");
+                } else {
+                    final int reverted = this.changes.size();
+                    this.rewriter.clear();
+                    this.changes.clear();
+                    this.counter = 0;
+                    log("replaceImage cancelled, rolled back " + reverted + " resources change(s)");
+                    this.error = cancel;
+                }
+            }
+
+            /**
+             * Revert all made changes, so the document is the same as before
+             * the operation.
+             *
+             * @return number of reverted changes
+             */
+            private int rollback() throws IOException {
+                final int reverted = this.changes.size();
+                for (int i = this.changes.size() - 1; i >= 0; i--) {
+                    this.changes.get(i).revert();
+                }
+                this.rewriter.clear();
+                this.changes.clear();
+                this.counter = 0;
+                return reverted;
+            }
+
+            /**
+             * Roll back changes made before error, the failed operation is not
+             * recorded so it must not leave any change in the document.
+             */
+            private void completeFailed(final Exception failure) {
+                this.error = failure;
+                try {
+                    log("replaceImage failed, rolled back " + this.rollback() + " resources change(s)");
+                } catch (Exception ex) {
+                    log("Can't roll back changes of failed replaceImage", ex);
+                }
+            }
+
+            private void logPatchStatistics(final long interpretationMillis, final int interpretedPages) {
+                final ResourcePatchTracker tracker = this.patchTracker;
+                log("replaceImage avoided " + tracker.getAvoidedWrites() + " write(s) of shared resources, skipped " + tracker.getSkippedPages()
+                        + " page(s) with already handled resources by checks in " + tracker.getCheckMillis() + " ms"
+                        + (interpretedPages > 0 ? ", saved about " + (tracker.getSkippedPages() * interpretationMillis / interpretedPages) + " ms of page interpretation" : ""));
+            }
 
             @Override
             protected Integer doInBackground() throws Exception {
+                // all changes of the document are made by its single writer
+                executor.write(this::replaceImages);
+                final InterruptedIOException cancel = this.cancel;
+                if (cancel != null) {
+                    // the user is asked out of the writer, so readers are not blocked by the dialog
+                    final boolean keep = this.askKeepPartialChanges();
+                    executor.write(() -> {
+                        try {
+                            this.completeCancelled(cancel, keep);
+                        } catch (Exception ex) {
+                            this.completeFailed(ex);
+                        }
+                        return null;
+                    });
+                }
+                return this.counter;
+            }
+
+            private Integer replaceImages() {
                 try {
-                    log("Request replaceImage for " + images.size() + " pair(s) and for " + pageIndexes.size() + " page(s), by image: " + byImage);
+                    log("Request replaceImage for " + images.size() + " pair(s) and for " + pageIndexes.size() + " page(s), by image: "
+                            + images.stream().filter(x -> x.byImage).count() + ", by name: " + images.stream().filter(x -> !x.byImage).count());
 
                     final ImageFinderStreamEngine finder = new ImageFinderStreamEngine();
 
+                    // the same replacement and transparent images of the same size are shared by pairs
+                    final Map<BufferedImage, PDImageXObject> replacements = new IdentityHashMap<>();
+                    final Map<Long, PDImageXObject> transparentImages = new HashMap<>();
                     for (final ImageNamePair p : images) {
-                        p.targetImage = LosslessFactory.createFromImage(document, image == null ? new BufferedImage(p.image.getWidth(), p.image.getHeight(), BufferedImage.TYPE_INT_ARGB) : image);
-                    }
-
-                    final AtomicInteger detectedErrors = new AtomicInteger();
-                    int processed = 0;
-
-                    final Set<COSName> replaced = new HashSet<>();
-                    for (final Integer pageIndex : pageIndexes) {
-                        PDPage page = document.getPage(pageIndex);
-                        final Map<COSName, ImageFinderStreamEngine.FoundImage> foundImages = finder.findImages(page);
-                        if (byImage) {
-                            replaced.clear();
-                            for (final ImageNamePair pair : images) {
-                                foundImages.entrySet()
-                                        .stream()
-                                        .filter(x -> !replaced.contains(x.getKey()))
-                                        .forEach(e -> {
-                                            try {
-                                                if (pair.isSimilarToImage(e.getValue().image)) {
-                                                    e.getValue().resources.put(e.getKey(), pair.targetImage);
-                                                    replaced.add(e.getKey());
-                                                    counter++;
-                                                }
-                                            } catch (IOException ex) {
-                                                detectedErrors.incrementAndGet();
-                                            }
-                                        });
+                        if (p.isInvocationRewrite()) {
+                            p.targetImage = null;
+                        } else if (p.replacement != null) {
+                            PDImageXObject target = replacements.get(p.replacement);
+                            if (target == null) {
+                                target = LosslessFactory.createFromImage(document, p.replacement);
+                                replacements.put(p.replacement, target);
                             }
+                            p.targetImage = target;
                         } else {
-                            for (final ImageNamePair pair : images) {
-                                FoundImage foundImageOnPage = foundImages.get(pair.name);
-                                if (foundImageOnPage != null && foundImageOnPage.image.getWidth() == pair.image.getWidth() && foundImageOnPage.image.getHeight() == pair.image.getHeight()) {
-                                    foundImageOnPage.resources.put(pair.name, pair.targetImage);
-                                    counter++;
-                                }
+                            final long size = ((long) p.image.getWidth() << 32) | (p.image.getHeight() & 0xFFFFFFFFL);
+                            PDImageXObject target = transparentImages.get(size);
+                            if (target == null) {
+                                target = LosslessFactory.createFromImage(document, new BufferedImage(p.image.getWidth(), p.image.getHeight(), BufferedImage.TYPE_INT_ARGB));
+                                transparentImages.put(size, target);
                             }
+                            p.targetImage = target;
                         }
-                        processed++;
-                        this.publish(processed);
-                        this.setProgress(Math.min(100, Math.round(((float) processed / (float) pageIndexes.size()) * 100.0f)));
                     }
 
-                    log("replaceImage found name of requested image(s) on " + counter + " page(s) (from " + processed + ')' + " detected " + detectedErrors.get() + " error(s) ");
-                    if (detectedErrors.get() > 0) {
-                        throw new IOException("Detected " + detectedErrors.get() + " during image replace");
+                    final int shardThreads = shardSource == null ? 1 : ShardedPageProcessor.calcThreads(pageIndexes.size(), Runtime.getRuntime().availableProcessors());
+                    final int processed = shardThreads > 1 ? this.processSharded(finder, shardThreads) : this.processPipeline(finder);
+
+                    this.rewriteInvocations();
+
+                    log("replaceImage applied " + counter + " change(s) on " + processed + " page(s)");
+                } catch (InterruptedIOException ex) {
+                    if (cancelled.getAsBoolean()) {
+                        try {
+                            // readers must not see partial changes while the user is asked, they are applied again if kept
+                            this.suspendChanges();
+                            this.cancel = ex;
+                        } catch (Exception suspendError) {
+                            this.completeFailed(suspendError);
+                        }
+                    } else {
+                        this.completeFailed(ex);
                     }
                 } catch (Exception ex) {
-                    this.error = ex;
+                    this.completeFailed(ex);
                 }
                 return counter;
             }
 
             @Override
             protected void process(final List<Integer> chunks) {
-                publishConsumer.accept(chunks);
+                final int done = chunks.get(chunks.size() - 1);
+                progressConsumer.accept(this.progressMeter.getPercent(done), this.progressMeter.describe(done));
             }
 
             @Override
             protected void done() {
-                doneConsumer.accept(this.error, this.counter);
+                doneConsumer.done(this.error, this.counter, this.changes, this.error == null && this.partial);
             }
 
         };
 
-        result.getPropertyChangeSupport().addPropertyChangeListener("progress", new PropertyChangeListener() {
-            @Override
-            public void propertyChange(PropertyChangeEvent evt) {
-                progressConsumer.accept((Integer) evt.getNewValue());
-            }
-        });
-
         return result;
     }
 
@@ -904,67 +1819,394 @@ public class MainFrame extends javax.swing.JFrame {
     }
 
     private void doSearchAndReplacement(final boolean byImage) {
-        final int choose = JOptionPane.showConfirmDialog(this,
-                "Search and hide on all pages?",
-                "Find and replace by " + (byImage ? " image data" : "name"), JOptionPane.YES_NO_CANCEL_OPTION);
-        if (choose == JOptionPane.CANCEL_OPTION) {
+        final HideMode hideMode = (HideMode) JOptionPane.showInputDialog(this,
+                "Hide mode",
+                "Find and hide by " + (byImage ? " image data" : "name"),
+                JOptionPane.QUESTION_MESSAGE,
+                null,
+                HideMode.values(),
+                HideMode.findForName(ApplicationPreferences.INSTANCE.getKey(ApplicationPreferences.PROPERTY_HIDE_MODE, null), HideMode.TRANSPARENT_IMAGE));
+        if (hideMode == null) {
             return;
         }
+        ApplicationPreferences.INSTANCE.setKey(ApplicationPreferences.PROPERTY_HIDE_MODE, hideMode.name());
 
-        final List<Integer> pages = choose == JOptionPane.YES_OPTION ? IntStream.range(0, this.document.getNumberOfPages()).boxed().collect(Collectors.toList()) : List.of(((Integer) this.spinnerPage.getValue()) - 1);
-        final List<ImageNamePair> pairs = new ArrayList<>();
-
+        final List<ImageNamePair> pairs;
         try {
-            for (final TreePath path : this.pageTree.getSelectionPaths()) {
+            pairs = this.makeSelectedImagePairs(byImage, null, hideMode);
+        } catch (Exception ex) {
+            this.log("Detected error during image replace, prepare image error", ex);
+            JOptionPane.showMessageDialog(this, "Can't prepare image(s): " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        if (this.menuEditQueueOperations.isSelected()) {
+            this.queueOperation("Hide by " + (byImage ? "image data" : "name") + ", " + hideMode, pairs);
+        } else {
+            this.runImageOperations("Search and hide on all pages?", "Find and replace by " + (byImage ? " image data" : "name"), "hide", pairs, null);
+        }
+    }
+
+    /**
+     * Make pairs for all selected images of current page.
+     *
+     * @param byImage true if images should be found by data
+     * @param replacement image to replace found images, null to hide them
+     * @param hideMode mode to hide found images
+     * @return pairs for selected images
+     * @throws IOException if any selected image can't be decoded
+     */
+    private List<ImageNamePair> makeSelectedImagePairs(final boolean byImage, final BufferedImage replacement, final HideMode hideMode) throws IOException {
+        final int sourcePage = ((Integer) this.spinnerPage.getValue()) - 1;
+        final TreePath[] paths = this.pageTree.getSelectionPaths();
+        // images are decoded for search by data
+        return this.readDocument(() -> {
+            final List<ImageNamePair> pairs = new ArrayList<>();
+            for (final TreePath path : paths) {
                 Object last = path.getLastPathComponent();
                 if (last instanceof PageTreeModel.PageItem) {
                     final PageTreeModel.PageItem i = (PageTreeModel.PageItem) last;
-                    pairs.add(new ImageNamePair(i.name, i.pdImage));
+                    pairs.add(new ImageNamePair(sourcePage, i.name, i.pdImage, byImage, replacement, hideMode));
                 }
             }
-        } catch (Exception ex) {
-            this.log("Detected error during image replace, prepare image error", ex);
-            JOptionPane.showMessageDialog(this, "Can't prepare image(s): " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return pairs;
+        });
+    }
+
+    /**
+     * Read the document in the current thread, the read is excluded from
+     * writes by the document executor and from renders of other readers.
+     *
+     * @param task task reading the document
+     * @return result of the task
+     * @throws IOException if the task is failed
+     */
+    private <T> T readDocument(final Callable<T> task) throws IOException {
+        final PDDocument readDocument = this.document;
+        return this.documentExecutor.read(() -> {
+            synchronized (readDocument) {
+                return task.call();
+            }
+        });
+    }
+
+    private void queueOperation(final String title, final List<ImageNamePair> pairs) {
+        this.queuedOperationPairs.addAll(pairs);
+        this.queuedOperationTitles.add(title + " (" + pairs.size() + " image(s))");
+        this.log("Queued operation '" + title + "' for " + pairs.size() + " image(s), queued operations: " + this.queuedOperationTitles.size());
+    }
+
+    private void clearQueuedOperations() {
+        this.queuedOperationPairs.clear();
+        this.queuedOperationTitles.clear();
+    }
+
+    /**
+     * Execute operations for image pairs in one pass over pages.
+     *
+     * @param question question to select all pages or only current page
+     * @param title title of dialogs
+     * @param action name of action for result messages
+     * @param pairs image pairs with their operations
+     * @param successAction action to be called after successful execution,
+     * can be null
+     */
+    private void runImageOperations(final String question, final String title, final String action, final List<ImageNamePair> pairs, final Runnable successAction) {
+        final int choose = JOptionPane.showConfirmDialog(this, question, title, JOptionPane.YES_NO_CANCEL_OPTION);
+        if (choose == JOptionPane.CANCEL_OPTION) {
             return;
         }
+        final boolean allPages = choose == JOptionPane.YES_OPTION;
+        final List<Integer> pages = allPages ? this.filterPagesWithImages(IntStream.range(0, this.document.getNumberOfPages()).boxed().collect(Collectors.toList()), pairs) : List.of(((Integer) this.spinnerPage.getValue()) - 1);
+        this.executeImageOperations(title, action, allPages ? null : pages, pages, pairs, successAction, null);
+    }
 
+    /**
+     * Start background execution of operations for image pairs. The
+     * operation is written into journal before start and committed after
+     * success, replayed operations are not written again.
+     *
+     * @param title title of operation
+     * @param action name of action for result messages
+     * @param selectedPages pages selected by user, null if all pages
+     * @param pages pages to be processed
+     * @param pairs image pairs with their operations
+     * @param successAction action to be called after successful execution,
+     * can be null
+     * @param replayed operation from journal, null if the operation is made
+     * by user
+     */
+    private void executeImageOperations(final String title, final String action, final List<Integer> selectedPages, final List<Integer> pages,
+            final List<ImageNamePair> pairs, final Runnable successAction, final OperationJournal.Operation replayed) {
+        final long journalSequence = replayed == null ? this.beginJournalOperation(title, selectedPages, pairs) : -1L;
+        final AtomicBoolean cancelRequested = new AtomicBoolean();
         try {
-            final SwingWorker<Integer, Integer> worker = makeSwingWorkerReplaceImage(document, pages, pairs, null, byImage,
+            final SwingWorker<Integer, Integer> worker = makeSwingWorkerReplaceImage(this.document, this.saveRequired ? null : this.documentSource, pages, pairs,
+                    cancelRequested::get,
                     this::updateProgressBar,
-                    (list) -> {
-
-                    },
-                    (error, counter) -> {
+                    (error, counter, changes, partial) -> {
                         this.deactivateProgress();
-                        if (error == null) {
+                        // journaled pages describe the whole operation, so kept partial changes can't be replayed,
+                        // replayed operation is already in the journal
+                        final boolean journaled = (replayed != null || journalSequence >= 0L) && !partial;
+                        final boolean recorded = error == null && this.operationLog.add(title, changes, journaled);
+                        this.completeJournalOperation(journalSequence, recorded && journaled ? changes : null);
+                        if (recorded && partial && journalSequence >= 0L) {
+                            this.log("Kept partial changes of '" + title + "' are not journaled and can't be replayed");
+                        }
+                        if (replayed != null && (error != null || partial) && this.journal != null) {
+                            // the rest of replay is not executed
+                            this.stopReplay(this.journal.getReplay().getOperations().indexOf(replayed));
+                        }
+                        if (error instanceof InterruptedIOException && cancelRequested.get()) {
+                            this.log("Image " + action + " is cancelled, changes are rolled back");
+                            JOptionPane.showMessageDialog(this, "Cancelled, changes are rolled back", "Cancelled", JOptionPane.INFORMATION_MESSAGE);
+                        } else if (error == null) {
                             this.saveRequired |= counter != 0;
                             this.updateTitle();
-                            JOptionPane.showMessageDialog(this, "Managed to find and hide " + counter + " image(s)", "Completed", JOptionPane.INFORMATION_MESSAGE);
+                            if (replayed != null) {
+                                this.checkReplayedObjects(replayed, changes);
+                            }
+                            if (successAction != null) {
+                                successAction.run();
+                            }
+                            if (replayed == null) {
+                                JOptionPane.showMessageDialog(this, "Managed to find and " + action + " " + counter + " image(s)", "Completed", JOptionPane.INFORMATION_MESSAGE);
+                            }
                         } else {
-                            this.log("Detected error during image replace", error);
+                            this.log("Detected error during image " + action, error);
                             error.printStackTrace();
-                            JOptionPane.showMessageDialog(this, "Can't hide image(s): " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                            JOptionPane.showMessageDialog(this, "Can't " + action + " image(s): " + error.getMessage() + "\nChanges are rolled back", "Error", JOptionPane.ERROR_MESSAGE);
                         }
                         this.updateVisiblePdfPage();
                     });
 
-            this.activateProgress();
+            this.activateProgress(() -> {
+                log("Requested cancel of image " + action);
+                cancelRequested.set(true);
+            });
             worker.execute();
         } catch (IOException ex) {
             this.deactivateProgress();
+            this.completeJournalOperation(journalSequence, null);
+            if (replayed != null && this.journal != null) {
+                this.stopReplay(this.journal.getReplay().getOperations().indexOf(replayed));
+            }
             this.log("Unexpected error", ex);
             JOptionPane.showMessageDialog(this, "Unexpected error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
 
+    /**
+     * Open journal of the opened file and offer to replay operations found in
+     * it, they are left by a session which has not been closed normally.
+     */
+    private void openJournal(final File file) {
+        this.closeJournal(false);
+        try {
+            this.journal = OperationJournal.open(file, OperationJournal.DEFAULT_SYNC_INTERVAL_MS);
+        } catch (IOException ex) {
+            this.log("Can't open operation journal of " + file.getName() + ", operations will not be journaled", ex);
+            return;
+        }
+        final OperationJournal.Replay replay = this.journal.getReplay();
+        if (replay.isBrokenTail()) {
+            this.log("Operation journal " + this.journal.getFile().getName() + " has broken tail, it is cut");
+        }
+        final List<OperationJournal.Operation> operations = replay.getOperations();
+        if (operations.isEmpty()) {
+            return;
+        }
+        this.log("Found " + operations.size() + " journaled operation(s) for " + file.getName());
+        if (JOptionPane.showConfirmDialog(this, "Found " + operations.size() + " operation(s) which were not saved in previous session.\nReplay them?",
+                "Operation journal", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE) == JOptionPane.YES_OPTION) {
+            this.replayJournal(replay, operations, 0, System.currentTimeMillis());
+        } else {
+            try {
+                this.journal.reset(file);
+            } catch (IOException ex) {
+                this.journalFailed(ex);
+            }
+        }
+    }
+
+    /**
+     * Close journal of the opened file.
+     *
+     * @param delete true if the document is closed normally and the journal
+     * is not needed anymore
+     */
+    private void closeJournal(final boolean delete) {
+        final OperationJournal current = this.journal;
+        this.journal = null;
+        if (current != null) {
+            try {
+                this.log("Operation journal " + current.getFile().getName() + " written records: " + current.getRecords() + ", syncs: " + current.getSyncs());
+                if (delete) {
+                    current.delete();
+                } else {
+                    current.close();
+                }
+            } catch (IOException ex) {
+                this.log("Can't close operation journal", ex);
+            }
+        }
+    }
+
+    private void journalFailed(final IOException error) {
+        this.log("Operation journal is disabled for error", error);
+        this.closeJournal(false);
+        JOptionPane.showMessageDialog(this, "Can't write operation journal: " + error.getMessage() + "\nOperations will not be journaled", "Warning", JOptionPane.WARNING_MESSAGE);
+    }
+
+    private long beginJournalOperation(final String title, final List<Integer> selectedPages, final List<ImageNamePair> pairs) {
+        if (this.journal == null) {
+            return -1L;
+        }
+        try {
+            final List<OperationJournal.PairRecord> records = new ArrayList<>(pairs.size());
+            for (final ImageNamePair pair : pairs) {
+                records.add(new OperationJournal.PairRecord(pair.sourcePage, pair.name.getName(), pair.byImage, pair.hideMode.name(),
+                        pair.replacement == null ? null : this.journal.putImage(pair.replacement)));
+            }
+            return this.journal.begin(title, selectedPages == null ? null : selectedPages.stream().mapToInt(Integer::intValue).toArray(), records);
+        } catch (IOException ex) {
+            this.journalFailed(ex);
+            return -1L;
+        }
+    }
+
+    /**
+     * Commit or abort journaled operation.
+     *
+     * @param sequence sequence number of the operation, negative if it is not
+     * journaled
+     * @param changes recorded changes of completed operation, null if the
+     * operation is failed or it has not changed anything
+     */
+    private void completeJournalOperation(final long sequence, final List<DocumentChange> changes) {
+        if (sequence < 0L || this.journal == null) {
+            return;
+        }
+        try {
+            if (changes == null) {
+                this.journal.abort(sequence);
+            } else {
+                this.journal.commit(sequence, changes);
+            }
+        } catch (IOException ex) {
+            this.journalFailed(ex);
+        }
+    }
+
+    /**
+     * Replay journaled operations one by one, image operations are executed
+     * in background and the next operation is started after success of the
+     * previous one.
+     */
+    private void replayJournal(final OperationJournal.Replay replay, final List<OperationJournal.Operation> operations, final int index, final long start) {
+        if (index >= operations.size()) {
+            this.log("Replayed " + operations.size() + " journaled operation(s) in " + (System.currentTimeMillis() - start) + " ms");
+            JOptionPane.showMessageDialog(this, "Replayed " + operations.size() + " operation(s)", "Operation journal", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        final OperationJournal.Operation operation = operations.get(index);
+        this.log("Replay journaled operation " + (index + 1) + " of " + operations.size() + ": " + operation.title);
+        try {
+            if (operation instanceof OperationJournal.ReorderOperation) {
+                final OperationJournal.ReorderOperation reorder = (OperationJournal.ReorderOperation) operation;
+                final List<DocumentChange> changes = new ArrayList<>();
+                this.documentExecutor.write(() -> {
+                    DocumentEditPanel.applyTo(this.document, this.changeTracker, reorder.order, reorder.author, reorder.creator, reorder.keywords, reorder.documentTitle, changes);
+                    return null;
+                });
+                this.operationLog.add(reorder.title, changes);
+                this.checkReplayedObjects(reorder, changes);
+                this.onPageOrderChanged();
+                this.updateVisiblePdfPage();
+                this.replayJournal(replay, operations, index + 1, start);
+            } else {
+                final OperationJournal.ImageOperation imageOperation = (OperationJournal.ImageOperation) operation;
+                final List<ImageNamePair> pairs = this.readDocument(() -> {
+                    final ImageFinderStreamEngine finder = new ImageFinderStreamEngine();
+                    final List<ImageNamePair> result = new ArrayList<>(imageOperation.pairs.size());
+                    for (final OperationJournal.PairRecord record : imageOperation.pairs) {
+                        final COSName name = COSName.getPDFName(record.name);
+                        FoundImage found = null;
+                        if (record.sourcePage < this.document.getNumberOfPages()) {
+                            // the last invocation is taken as it is shown in the page tree
+                            for (final FoundImage image : finder.findAllImages(this.document.getPage(record.sourcePage))) {
+                                if (name.equals(image.name)) {
+                                    found = image;
+                                }
+                            }
+                        }
+                        if (found == null) {
+                            throw new IOException("Can't find image " + record.name + " on page " + (record.sourcePage + 1));
+                        }
+                        result.add(new ImageNamePair(record.sourcePage, name, found.image, record.byImage,
+                                record.replacementDigest == null ? null : replay.getImage(record.replacementDigest),
+                                HideMode.valueOf(record.hideMode)));
+                    }
+                    return result;
+                });
+                // cached index is not verified yet during replay, so all pages are processed
+                final List<Integer> pages = imageOperation.pages == null
+                        ? IntStream.range(0, this.document.getNumberOfPages()).boxed().collect(Collectors.toList())
+                        : Arrays.stream(imageOperation.pages).boxed().collect(Collectors.toList());
+                this.executeImageOperations(imageOperation.title, "replay", null, pages, pairs,
+                        () -> this.replayJournal(replay, operations, index + 1, start), operation);
+            }
+        } catch (IOException | RuntimeException ex) {
+            this.log("Can't replay journaled operation " + operation.title, ex);
+            this.stopReplay(index);
+            JOptionPane.showMessageDialog(this, "Can't replay operation '" + operation.title + "': " + ex.getMessage() + "\nReplayed " + index + " operation(s)",
+                    "Operation journal", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Keep in journal only operations replayed before failure or cancel of
+     * replay, new operations are appended after them.
+     *
+     * @param replayed number of completely replayed operations
+     */
+    private void stopReplay(final int replayed) {
+        if (this.journal != null && this.documentFile != null) {
+            try {
+                this.journal.retainReplayed(this.documentFile, replayed);
+                this.log("Replay is stopped, operation journal keeps " + replayed + " replayed operation(s)");
+            } catch (IOException ex) {
+                this.journalFailed(ex);
+            }
+        }
+    }
+
+    /**
+     * Compare objects changed by replayed operation with objects written in
+     * the journal, difference is only logged.
+     */
+    private void checkReplayedObjects(final OperationJournal.Operation operation, final List<DocumentChange> changes) {
+        final long[] journaled = operation.getObjectNumbers();
+        final long[] replayed = OperationJournal.collectObjectNumbers(changes);
+        if (!Arrays.equals(journaled, replayed)) {
+            this.log("Replayed operation " + operation.title + " changed " + replayed.length + " object(s), journal contains " + journaled.length + " object(s)");
+        }
+    }
 
     private void menuEditHidePictureForNameActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_menuEditHidePictureForNameActionPerformed
         this.log("Pressed menuEditMakeTransparentActionPerformed");
         this.doSearchAndReplacement(false);
     }//GEN-LAST:event_menuEditHidePictureForNameActionPerformed
 
-    private boolean saveAsFile() {
+    private boolean saveAsFile(final boolean incremental) {
         try {
+            if (incremental && !this.changeTracker.isIncrementalSavePossible()
+                    && JOptionPane.showConfirmDialog(this, "Can't save incrementally, " + this.changeTracker.getFullSaveReason() + ". Save whole document?", "Incremental save", JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE) == JOptionPane.CANCEL_OPTION) {
+                return false;
+            }
+            final boolean saveIncrementally = incremental && this.changeTracker.isIncrementalSavePossible();
+
             final JFileChooser fileSaveDialog = new JFileChooser(this.lastSavedFile);
             fileSaveDialog.setFileFilter(FILEFILTER_PDF);
             fileSaveDialog.setFileSelectionMode(JFileChooser.FILES_ONLY);
@@ -983,17 +2225,17 @@ public class MainFrame extends javax.swing.JFrame {
                     return false;
                 }
 
-                try {
-                    this.document.save(targetFile);
-                    this.saveRequired = false;
-                    this.updateTitle();
-                    this.log("Saved file: " + targetFile.getName());
-                    return true;
-                } catch (IOException ex) {
-                    this.log("Error save file: " + targetFile.getName(), ex);
-                    ex.printStackTrace();
-                    JOptionPane.showMessageDialog(this, "Can't save file for error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                if (this.documentMapped && MappedRandomAccessRead.isFileLockedByMapping()
+                        && isSameFile(this.documentFile, targetFile)) {
+                    // the mapping is alive while the document is open, so the file can't be replaced
+                    this.log("Save over memory mapped source " + targetFile.getName() + " is rejected");
+                    JOptionPane.showMessageDialog(this, "File " + targetFile.getName() + " is opened through memory mapped input and can't be replaced while it is open.\n"
+                            + "Save into another file or disable memory mapped input in options and open the file again", "Can't save", JOptionPane.WARNING_MESSAGE);
+                    return false;
                 }
+
+                this.startSave(targetFile, saveIncrementally);
+                return true;
             }
         } catch (Exception ex) {
             this.log("Error during menuFileSaveAsActionPerformed", ex);
@@ -1002,15 +2244,128 @@ public class MainFrame extends javax.swing.JFrame {
         return false;
     }
 
+    /**
+     * Start background save of current document. The document is written into
+     * temp file in the target folder, synced to disk and atomically moved to
+     * the target place, so that failed or cancelled save never leaves broken
+     * target file. All edit actions are blocked by glass pane until end of
+     * save.
+     */
+    private void startSave(final File targetFile, final boolean incremental) {
+        final PDDocument savedDocument = this.document;
+        final long expectedSize = Math.max(1L, this.documentFile == null ? 0L : this.documentFile.length());
+        final AtomicBoolean cancelRequested = new AtomicBoolean();
+        final DocumentExecutor executor = this.documentExecutor;
+
+        final SwingWorker<Boolean, Long> worker = new SwingWorker<Boolean, Long>() {
+            private volatile Throwable error = null;
+
+            @Override
+            protected Boolean doInBackground() throws Exception {
+                // save prunes resources, so it is queued with other changes of the document
+                return executor.write(this::writeDocument);
+            }
+
+            private Boolean writeDocument() throws IOException {
+                final Path targetPath = targetFile.getAbsoluteFile().toPath();
+                final Path tempPath = Files.createTempFile(targetPath.getParent(), '.' + targetFile.getName(), ".tmp");
+                try {
+                    try (FileOutputStream fileOut = new FileOutputStream(tempPath.toFile())) {
+                        final ProgressOutputStream out = new ProgressOutputStream(new BufferedOutputStream(fileOut, 0x10000),
+                                written -> this.setProgress((int) Math.min(99L, written * 100L / expectedSize)),
+                                cancelRequested::get);
+                        if (incremental) {
+                            changeTracker.saveIncremental(savedDocument, out);
+                            log("Appended " + changeTracker.getChangedObjects().size() + " changed object(s) to original document");
+                        } else {
+                            // unused resources are removed only for written output, undo still can invoke them
+                            final List<DocumentChange> pruneChanges = new ArrayList<>();
+                            try {
+                                final ResourcePruner.Result pruneResult = new ResourcePruner(savedDocument).prune(pruneChanges);
+                                log("Pruned unused resources before save: " + pruneResult);
+                                savedDocument.save(out);
+                            } finally {
+                                for (int i = pruneChanges.size() - 1; i >= 0; i--) {
+                                    pruneChanges.get(i).revert();
+                                }
+                            }
+                        }
+                        out.flush();
+                        fileOut.getFD().sync();
+                        log("Written " + out.getWrittenBytes() + " byte(s) into temp file " + tempPath);
+                    }
+                    try {
+                        Files.move(tempPath, targetPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    } catch (AtomicMoveNotSupportedException ex) {
+                        Files.move(tempPath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    return true;
+                } catch (Exception ex) {
+                    this.error = ex;
+                    return false;
+                } finally {
+                    Files.deleteIfExists(tempPath);
+                }
+            }
+
+            @Override
+            protected void done() {
+                activeSaveWorker = null;
+                deactivateProgress();
+                if (this.error == null) {
+                    if (!incremental) {
+                        changeTracker.requireFullSave("document has been saved in full mode");
+                    }
+                    saveRequired = false;
+                    // the document doesn't match the opened file anymore
+                    documentIndex = null;
+                    documentSource = null;
+                    if (journal != null && isSameFile(documentFile, targetFile)) {
+                        // journaled operations are saved in the file
+                        try {
+                            journal.reset(targetFile);
+                            operationLog.clearJournaled();
+                        } catch (IOException ex) {
+                            journalFailed(ex);
+                        }
+                    }
+                    updateTitle();
+                    log("Saved file: " + targetFile.getName());
+                } else if (this.error instanceof InterruptedIOException) {
+                    log("Save of " + targetFile.getName() + " has been cancelled");
+                    JOptionPane.showMessageDialog(MainFrame.this, "Save has been cancelled, file " + targetFile.getName() + " is not changed", "Cancelled", JOptionPane.INFORMATION_MESSAGE);
+                } else {
+                    log("Error save file: " + targetFile.getName(), this.error);
+                    JOptionPane.showMessageDialog(MainFrame.this, "Can't save file for error: " + this.error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        worker.getPropertyChangeSupport().addPropertyChangeListener("progress", e -> this.updateProgressBar((Integer) e.getNewValue()));
+
+        this.activeSaveWorker = worker;
+        this.activateProgress(() -> {
+            log("Requested cancel of save");
+            cancelRequested.set(true);
+        });
+        worker.execute();
+    }
+
     private void menuFileSaveAsActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_menuFileSaveAsActionPerformed
         this.log("Pressed menuFileSaveAsActionPerformed");
-        saveAsFile();
+        saveAsFile(false);
     }//GEN-LAST:event_menuFileSaveAsActionPerformed
 
     private void menuEditMenuSelected(javax.swing.event.MenuEvent evt) {//GEN-FIRST:event_menuEditMenuSelected
         final long selectedImages = this.pageTree.getSelectionPaths() == null ? 0L : Stream.of(this.pageTree.getSelectionPaths()).map(x -> x.getLastPathComponent()).filter(x -> x instanceof PageTreeModel.PageItem).count();
 
+        this.menuEditUndo.setEnabled(this.document != null && this.operationLog.canUndo());
+        this.menuEditUndo.setText("Undo" + (this.operationLog.canUndo() ? " " + this.operationLog.getUndoTitle() : ""));
+        this.menuEditRedo.setEnabled(this.document != null && this.operationLog.canRedo());
+        this.menuEditRedo.setText("Redo" + (this.operationLog.canRedo() ? " " + this.operationLog.getRedoTitle() : ""));
+
         this.menuReorderPages.setEnabled(this.document != null);
+        this.menuEditDeduplicateImages.setEnabled(this.document != null);
+        this.menuEditDownsampleImages.setEnabled(this.document != null);
         
         this.menuEditShowImage.setEnabled(selectedImages == 1);
 
@@ -1019,6 +2374,11 @@ public class MainFrame extends javax.swing.JFrame {
 
         this.menuEditReplaceByFileForName.setEnabled(selectedImages > 0);
         this.menuEditReplaceByFileForImage.setEnabled(selectedImages > 0);
+
+        this.menuEditQueueOperations.setEnabled(this.document != null);
+        this.menuEditRunQueuedOperations.setEnabled(this.document != null && !this.queuedOperationTitles.isEmpty());
+        this.menuEditRunQueuedOperations.setText("Run queued operations" + (this.queuedOperationTitles.isEmpty() ? "" : " (" + this.queuedOperationTitles.size() + ")"));
+        this.menuEditClearQueuedOperations.setEnabled(!this.queuedOperationTitles.isEmpty());
     }//GEN-LAST:event_menuEditMenuSelected
 
     private void menuHelpAboutActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_menuHelpAboutActionPerformed
@@ -1035,6 +2395,7 @@ public class MainFrame extends javax.swing.JFrame {
 
     private void menuFileMenuSelected(javax.swing.event.MenuEvent evt) {//GEN-FIRST:event_menuFileMenuSelected
         this.menuFileSaveAs.setEnabled(this.document != null);
+        this.menuFileSaveIncremental.setEnabled(this.document != null && this.documentFile != null);
     }//GEN-LAST:event_menuFileMenuSelected
 
     private void menuFileExitActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_menuFileExitActionPerformed
@@ -1047,10 +2408,7 @@ public class MainFrame extends javax.swing.JFrame {
         if (!evt.isPopupTrigger() && evt.getClickCount() > 1) {
             final TreePath path = this.pageTree.getPathForLocation(evt.getX(), evt.getY());
             if (path != null && path.getLastPathComponent() instanceof PageTreeModel.PageItem) {
-                final PageTreeModel.PageItem selectedItem = (PageTreeModel.PageItem) path.getLastPathComponent();
-                final ImageShow selectedItemPanel = new ImageShow(selectedItem);
-                UiUtils.makeOwningDialogResizable(selectedItemPanel);
-                JOptionPane.showMessageDialog(this, selectedItemPanel, "Image", JOptionPane.PLAIN_MESSAGE);
+                this.showImage((PageTreeModel.PageItem) path.getLastPathComponent());
             }
         }
     }//GEN-LAST:event_pageTreeMouseClicked
@@ -1058,15 +2416,29 @@ public class MainFrame extends javax.swing.JFrame {
     private void menuEditShowImageActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_menuEditShowImageActionPerformed
         final TreePath path = this.pageTree.getSelectionPath();
         if (path != null && path.getLastPathComponent() instanceof PageTreeModel.PageItem) {
-            final PageTreeModel.PageItem selectedItem = (PageTreeModel.PageItem) path.getLastPathComponent();
-            final ImageShow selectedItemPanel = new ImageShow(selectedItem);
-            UiUtils.makeOwningDialogResizable(selectedItemPanel);
-            JOptionPane.showMessageDialog(this, selectedItemPanel, "Image", JOptionPane.PLAIN_MESSAGE);
+            this.showImage((PageTreeModel.PageItem) path.getLastPathComponent());
         }
     }//GEN-LAST:event_menuEditShowImageActionPerformed
 
+    private void showImage(final PageTreeModel.PageItem item) {
+        final ImageShow selectedItemPanel;
+        try {
+            // the image is decoded from the document
+            selectedItemPanel = this.readDocument(() -> new ImageShow(item));
+        } catch (IOException ex) {
+            this.log("Can't show image " + item.name.getName(), ex);
+            return;
+        }
+        UiUtils.makeOwningDialogResizable(selectedItemPanel);
+        JOptionPane.showMessageDialog(this, selectedItemPanel, "Image", JOptionPane.PLAIN_MESSAGE);
+    }
+
     private void updateProgressBar(final int progress) {
-        this.progressBar.setString("Processed " + progress + '%');
+        this.updateProgressBar(progress, "Processed " + progress + '%');
+    }
+
+    private void updateProgressBar(final int progress, final String text) {
+        this.progressBar.setString(text);
         this.progressBar.setValue(progress);
     }
 
@@ -1090,43 +2462,112 @@ public class MainFrame extends javax.swing.JFrame {
                 return;
             }
 
-            final int choose = JOptionPane.showConfirmDialog(this, "Replace for all pages?", "Replace by " + (byImage ? "image" : "name"), JOptionPane.YES_NO_CANCEL_OPTION);
-            if (choose == JOptionPane.CANCEL_OPTION) {
-                return;
+            final List<ImageNamePair> pairs = this.makeSelectedImagePairs(byImage, loadedImage, HideMode.TRANSPARENT_IMAGE);
+            if (this.menuEditQueueOperations.isSelected()) {
+                this.queueOperation("Replace by " + (byImage ? "image data" : "name") + " with " + sourceFile.getName(), pairs);
+            } else {
+                this.runImageOperations("Replace for all pages?", "Replace by " + (byImage ? "image" : "name"), "replace", pairs, null);
             }
+        }
+    }
 
-            final List<Integer> pages = choose == JOptionPane.YES_OPTION ? IntStream.range(0, this.document.getNumberOfPages()).boxed().collect(Collectors.toList()) : List.of(((Integer) this.spinnerPage.getValue()) - 1);
-            final List<ImageNamePair> pairs = new ArrayList<>();
+    private void menuEditRunQueuedOperationsActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_menuEditRunQueuedOperationsActionPerformed
+        this.log("Pressed menuEditRunQueuedOperationsActionPerformed");
+        if (this.queuedOperationPairs.isEmpty()) {
+            return;
+        }
+        final String question = "Execute queued operations on all pages?\n" + String.join("\n", this.queuedOperationTitles);
+        this.runImageOperations(question, "Run queued operations", "process", new ArrayList<>(this.queuedOperationPairs), this::clearQueuedOperations);
+    }//GEN-LAST:event_menuEditRunQueuedOperationsActionPerformed
+
+    private void menuEditClearQueuedOperationsActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_menuEditClearQueuedOperationsActionPerformed
+        this.log("Pressed menuEditClearQueuedOperationsActionPerformed");
+        this.clearQueuedOperations();
+    }//GEN-LAST:event_menuEditClearQueuedOperationsActionPerformed
+
+    private void menuEditUndoActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_menuEditUndoActionPerformed
+        this.log("Pressed menuEditUndoActionPerformed");
+        this.undoOrRedo(true);
+    }//GEN-LAST:event_menuEditUndoActionPerformed
+
+    private void menuEditRedoActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_menuEditRedoActionPerformed
+        this.log("Pressed menuEditRedoActionPerformed");
+        this.undoOrRedo(false);
+    }//GEN-LAST:event_menuEditRedoActionPerformed
+
+    /**
+     * Revert the last operation or apply the last reverted one, only recorded
+     * changes are touched.
+     *
+     * @param undo true to revert, false to apply again
+     */
+    /**
+     * Revert changes of failed operation in reverse order, must be called by
+     * the document writer.
+     */
+    private void revertChanges(final String operation, final List<DocumentChange> changes) {
+        try {
+            for (int i = changes.size() - 1; i >= 0; i--) {
+                changes.get(i).revert();
+            }
+            this.log("Rolled back " + changes.size() + " change(s) of failed " + operation);
+        } catch (Exception ex) {
+            this.log("Can't roll back changes of failed " + operation, ex);
+        }
+        changes.clear();
+    }
 
-            for (final TreePath path : this.pageTree.getSelectionPaths()) {
-                Object last = path.getLastPathComponent();
-                if (last instanceof PageTreeModel.PageItem) {
-                    final PageTreeModel.PageItem i = (PageTreeModel.PageItem) last;
-                    pairs.add(new ImageNamePair(i.name, i.pdImage));
+    private void undoOrRedo(final boolean undo) {
+        // accelerators work even if menu is disabled during background work
+        if (this.document == null || this.getGlassPane().isVisible()) {
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        final EditOperationLog.Operation operation;
+        try {
+            operation = this.documentExecutor.write(() -> undo ? this.operationLog.undo() : this.operationLog.redo());
+        } catch (Exception ex) {
+            this.log("Can't " + (undo ? "undo" : "redo") + " operation", ex);
+            JOptionPane.showMessageDialog(this, "Can't " + (undo ? "undo" : "redo") + " operation: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (operation == null) {
+            return;
+        }
+        this.log((undo ? "Undone" : "Redone") + " '" + operation.getTitle() + "', " + operation.getChanges().size() + " change(s) in "
+                + (System.currentTimeMillis() - start) + " ms, kept changes: " + this.operationLog.getChangeCount());
+        if (this.journal != null && operation.isJournaled()) {
+            try {
+                if (undo) {
+                    this.journal.undo();
+                } else {
+                    this.journal.redo();
                 }
+            } catch (IOException ex) {
+                this.journalFailed(ex);
             }
-
-            final SwingWorker<Integer, Integer> worker = makeSwingWorkerReplaceImage(this.document, pages, pairs, loadedImage, byImage,
-                    this::updateProgressBar,
-                    (list) -> {
-                    },
-                    (error, counter) -> {
-                        this.deactivateProgress();
-                        if (error == null) {
-                            this.saveRequired |= counter != 0;
-                            this.updateTitle();
-                            JOptionPane.showMessageDialog(this, "Managed to find and replace " + counter + " image(s)", "Completed", JOptionPane.INFORMATION_MESSAGE);
-                        } else {
-                            error.printStackTrace();
-                            JOptionPane.showMessageDialog(this, "Can't replace image(s): " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                        }
-                        this.updateVisiblePdfPage();
-                    });
-            this.activateProgress();
-            worker.execute();
         }
+        if (operation.isPageOrderChanged()) {
+            this.onPageOrderChanged();
+        } else {
+            this.saveRequired = true;
+            this.updateTitle();
+        }
+        this.updateVisiblePdfPage();
     }
 
+    /**
+     * Update state after change of page order, the index and the source
+     * file don't describe the document anymore.
+     */
+    private void onPageOrderChanged() {
+        this.documentIndex = null;
+        this.documentSource = null;
+        this.renderer = new PDFRenderer(this.document);
+        this.updatePageSpinner();
+        this.saveRequired = true;
+        this.updateTitle();
+    }
 
     private void menuEditReplaceByFileForNameActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_menuEditReplaceByFileForNameActionPerformed
         this.log("pressed menuEditReplaceByFileForNameActionPerformed");
@@ -1153,17 +2594,31 @@ public class MainFrame extends javax.swing.JFrame {
 
     private void menuReorderPagesActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_menuReorderPagesActionPerformed
         try {
-            final DocumentEditPanel panel = new DocumentEditPanel(this.document);
+            // cached previews can be used only while the document is the same as the opened file
+            final DocumentIndex index = this.saveRequired ? null : this.documentIndex;
+            final DocumentEditPanel panel = new DocumentEditPanel(this.document, this.documentExecutor, index);
             UiUtils.makeOwningDialogResizable(panel);
-            if (JOptionPane.showConfirmDialog(this, panel, "Reorder pages", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) == JOptionPane.OK_OPTION) {
-                final PDDocument newDocument = panel.makeDocument().orElse(null);
-                panel.dispose();
-
-                if (newDocument == null) {
-                    JOptionPane.showMessageDialog(this, "No pages in new document", "Warning", JOptionPane.WARNING_MESSAGE);
+            final int result = JOptionPane.showConfirmDialog(this, panel, "Reorder pages", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+            // stop background rendering of page previews before document change
+            panel.dispose();
+            if (index != null) {
+                this.storeDocumentIndex(this.documentFile, index);
+            }
+            if (result == JOptionPane.OK_OPTION) {
+                final List<DocumentChange> changes = new ArrayList<>();
+                if (this.documentExecutor.write(() -> panel.applyTo(this.document, this.changeTracker, changes))) {
+                    this.operationLog.add("Reorder pages", changes);
+                    if (this.journal != null) {
+                        try {
+                            final PDDocumentInformation info = this.document.getDocumentInformation();
+                            this.journal.reorder(panel.getPageOrder(), info.getAuthor(), info.getCreator(), info.getKeywords(), info.getTitle(), changes);
+                        } catch (IOException ex) {
+                            this.journalFailed(ex);
+                        }
+                    }
+                    this.onPageOrderChanged();
                 } else {
-                    this.replaceDocument(newDocument);
-                    this.saveRequired = true;
+                    JOptionPane.showMessageDialog(this, "No pages in new document", "Warning", JOptionPane.WARNING_MESSAGE);
                 }
             }
         } catch(IOException ex) {
@@ -1173,6 +2628,159 @@ public class MainFrame extends javax.swing.JFrame {
         }
     }//GEN-LAST:event_menuReorderPagesActionPerformed
 
+    private void menuEditDeduplicateImagesActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_menuEditDeduplicateImagesActionPerformed
+        this.log("Pressed menuEditDeduplicateImagesActionPerformed");
+        final PDDocument processedDocument = this.document;
+        final DocumentExecutor executor = this.documentExecutor;
+        final SwingWorker<ImageDeduplicator.Result, Integer> worker = new SwingWorker<ImageDeduplicator.Result, Integer>() {
+            private volatile Throwable error = null;
+            private final List<DocumentChange> changes = new ArrayList<>();
+
+            @Override
+            protected ImageDeduplicator.Result doInBackground() throws Exception {
+                return executor.write(() -> {
+                    final ImageDeduplicator deduplicator = new ImageDeduplicator();
+                    try {
+                        final int pages = processedDocument.getNumberOfPages();
+                        for (int i = 0; i < pages; i++) {
+                            deduplicator.processPage(processedDocument.getPage(i), this.changes);
+                            this.setProgress(Math.min(100, Math.round(((float) (i + 1) / (float) pages) * 100.0f)));
+                        }
+                    } catch (Exception ex) {
+                        this.error = ex;
+                        revertChanges("deduplication", this.changes);
+                    }
+                    return deduplicator.getResult();
+                });
+            }
+
+            @Override
+            protected void done() {
+                deactivateProgress();
+                if (this.error == null) {
+                    try {
+                        final ImageDeduplicator.Result result = this.get();
+                        log("Deduplicate images: " + result);
+                        saveRequired |= result.repointedEntries != 0;
+                        if (result.repointedEntries != 0) {
+                            changeTracker.requireFullSave("duplicated images are removed only by full save");
+                            operationLog.add("Deduplicate images", this.changes, false);
+                        }
+                        updateTitle();
+                        JOptionPane.showMessageDialog(MainFrame.this, "Found " + result.duplicateStreams + " duplicated image(s), saved " + result.savedBytes + " byte(s)", "Completed", JOptionPane.INFORMATION_MESSAGE);
+                    } catch (Exception ex) {
+                        log("Can't get deduplication result", ex);
+                    }
+                } else {
+                    log("Detected error during image deduplication", this.error);
+                    JOptionPane.showMessageDialog(MainFrame.this, "Can't deduplicate images: " + this.error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+                updateVisiblePdfPage();
+            }
+        };
+        worker.getPropertyChangeSupport().addPropertyChangeListener("progress", e -> this.updateProgressBar((Integer) e.getNewValue()));
+        this.activateProgress();
+        worker.execute();
+    }//GEN-LAST:event_menuEditDeduplicateImagesActionPerformed
+
+    private void menuEditDownsampleImagesActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_menuEditDownsampleImagesActionPerformed
+        this.log("Pressed menuEditDownsampleImagesActionPerformed");
+
+        final JSpinner spinnerThreshold = new JSpinner(new SpinnerNumberModel(
+                Integer.parseInt(ApplicationPreferences.INSTANCE.getKey(ApplicationPreferences.PROPERTY_DOWNSAMPLE_THRESHOLD_DPI, "300")), 10, 2400, 10));
+        final JSpinner spinnerTarget = new JSpinner(new SpinnerNumberModel(
+                Integer.parseInt(ApplicationPreferences.INSTANCE.getKey(ApplicationPreferences.PROPERTY_DOWNSAMPLE_TARGET_DPI, "150")), 10, 2400, 10));
+        final JPanel panel = new JPanel(new GridLayout(2, 2, 8, 8));
+        panel.add(new JLabel("Downsample images over DPI:"));
+        panel.add(spinnerThreshold);
+        panel.add(new JLabel("Target DPI:"));
+        panel.add(spinnerTarget);
+
+        if (JOptionPane.showConfirmDialog(this, panel, "Downsample images", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        final int thresholdDpi = (Integer) spinnerThreshold.getValue();
+        final int targetDpi = (Integer) spinnerTarget.getValue();
+        if (targetDpi > thresholdDpi) {
+            JOptionPane.showMessageDialog(this, "Target DPI must not be greater than threshold DPI", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        ApplicationPreferences.INSTANCE.setKey(ApplicationPreferences.PROPERTY_DOWNSAMPLE_THRESHOLD_DPI, Integer.toString(thresholdDpi));
+        ApplicationPreferences.INSTANCE.setKey(ApplicationPreferences.PROPERTY_DOWNSAMPLE_TARGET_DPI, Integer.toString(targetDpi));
+
+        final PDDocument processedDocument = this.document;
+        final DocumentExecutor executor = this.documentExecutor;
+        final SwingWorker<List<ImageDownsampler.Entry>, Integer> worker = new SwingWorker<List<ImageDownsampler.Entry>, Integer>() {
+            private volatile Throwable error = null;
+            private final List<DocumentChange> changes = new ArrayList<>();
+
+            @Override
+            protected List<ImageDownsampler.Entry> doInBackground() throws Exception {
+                return executor.write(() -> {
+                    try {
+                        final ImageDownsampler downsampler = new ImageDownsampler(processedDocument, thresholdDpi, targetDpi, 0.8f);
+                        final int pages = processedDocument.getNumberOfPages();
+                        for (int i = 0; i < pages; i++) {
+                            downsampler.scanPage(processedDocument.getPage(i));
+                            this.setProgress(Math.min(50, Math.round(((float) (i + 1) / (float) pages) * 50.0f)));
+                        }
+                        final int candidates = downsampler.getCandidateCount();
+                        log("Downsample images: found " + candidates + " image(s) over " + thresholdDpi + " DPI");
+                        return downsampler.process(Runtime.getRuntime().availableProcessors(),
+                                processed -> this.setProgress(50 + Math.min(50, Math.round(((float) processed / (float) candidates) * 50.0f))), this.changes);
+                    } catch (Exception ex) {
+                        this.error = ex;
+                        revertChanges("downsample", this.changes);
+                    }
+                    return List.<ImageDownsampler.Entry>of();
+                });
+            }
+
+            @Override
+            protected void done() {
+                deactivateProgress();
+                if (this.error == null) {
+                    try {
+                        final List<ImageDownsampler.Entry> result = this.get();
+                        long before = 0L;
+                        long after = 0L;
+                        int replaced = 0;
+                        for (final ImageDownsampler.Entry e : result) {
+                            log("Downsample image: " + e);
+                            if (e.replaced) {
+                                before += e.sourceBytes;
+                                after += e.targetBytes;
+                                replaced++;
+                            }
+                        }
+                        saveRequired |= replaced != 0;
+                        if (replaced != 0) {
+                            changeTracker.requireFullSave("downsampled images reduce size only by full save");
+                            operationLog.add("Downsample images", this.changes, false);
+                        }
+                        updateTitle();
+                        JOptionPane.showMessageDialog(MainFrame.this, "Downsampled " + replaced + " image(s) from " + result.size() + ", " + before + " byte(s) -> " + after + " byte(s)", "Completed", JOptionPane.INFORMATION_MESSAGE);
+                    } catch (Exception ex) {
+                        log("Can't get downsample result", ex);
+                    }
+                } else {
+                    log("Detected error during image downsample", this.error);
+                    JOptionPane.showMessageDialog(MainFrame.this, "Can't downsample images: " + this.error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+                updateVisiblePdfPage();
+            }
+        };
+        worker.getPropertyChangeSupport().addPropertyChangeListener("progress", e -> this.updateProgressBar((Integer) e.getNewValue()));
+        this.activateProgress();
+        worker.execute();
+    }//GEN-LAST:event_menuEditDownsampleImagesActionPerformed
+
+    private void menuFileSaveIncrementalActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_menuFileSaveIncrementalActionPerformed
+        this.log("Pressed menuFileSaveIncrementalActionPerformed");
+        saveAsFile(true);
+    }//GEN-LAST:event_menuFileSaveIncrementalActionPerformed
+
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.Box.Filler filler1;
     private javax.swing.JLabel jLabel1;
@@ -1180,15 +2788,26 @@ public class MainFrame extends javax.swing.JFrame {
     private javax.swing.JMenuBar mainMenu;
     private javax.swing.JScrollPane mainScrollPane;
     private javax.swing.JMenu menuEdit;
+    private javax.swing.JMenuItem menuEditClearQueuedOperations;
+    private javax.swing.JMenuItem menuEditDeduplicateImages;
+    private javax.swing.JMenuItem menuEditDownsampleImages;
     private javax.swing.JMenuItem menuEditHidePictureForImage;
     private javax.swing.JMenuItem menuEditHidePictureForName;
+    private javax.swing.JCheckBoxMenuItem menuEditQueueOperations;
+    private javax.swing.JPopupMenu.Separator menuEditQueueSeparator;
+    private javax.swing.JMenuItem menuEditRedo;
     private javax.swing.JMenuItem menuEditReplaceByFileForImage;
     private javax.swing.JMenuItem menuEditReplaceByFileForName;
+    private javax.swing.JMenuItem menuEditRunQueuedOperations;
+    private javax.swing.JPopupMenu.Separator menuEditSeparator;
     private javax.swing.JMenuItem menuEditShowImage;
+    private javax.swing.JMenuItem menuEditUndo;
+    private javax.swing.JPopupMenu.Separator menuEditUndoSeparator;
     private javax.swing.JMenu menuFile;
     private javax.swing.JMenuItem menuFileExit;
     private javax.swing.JMenuItem menuFileOpen;
     private javax.swing.JMenuItem menuFileSaveAs;
+    private javax.swing.JMenuItem menuFileSaveIncremental;
     private javax.swing.JPopupMenu.Separator menuFileSeparator;
     private javax.swing.JMenu menuHelp;
     private javax.swing.JMenuItem menuHelpAbout;
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadView;
+
+/**
+ * Read only random access to a file mapped into memory. The file is mapped
+ * by chunks, so that files bigger than 2 GB are supported, and random object
+ * access is served by the OS page cache instead of the heap. Mapped memory is
+ * released by GC after close, because Java has no public API to unmap it, and
+ * duplicated readers of the same mapping can be still in use. On Windows the
+ * mapped file can't be replaced until the mapping is released.
+ */
+public final class MappedRandomAccessRead implements RandomAccessRead {
+
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+
+    private final ByteBuffer[] chunks;
+    private final long length;
+    private long position;
+    private boolean closed;
+
+    public MappedRandomAccessRead(final File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            this.length = channel.size();
+            this.chunks = new ByteBuffer[(int) ((this.length + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+            for (int i = 0; i < this.chunks.length; i++) {
+                final long start = (long) i << CHUNK_BITS;
+                this.chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, this.length - start));
+            }
+        }
+    }
+
+    /**
+     * Check that a file can't be replaced or deleted while it is mapped.
+     *
+     * @return true if mapped file is locked by OS
+     */
+    public static boolean isFileLockedByMapping() {
+        return System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows");
+    }
+
+    private MappedRandomAccessRead(final ByteBuffer[] chunks, final long length) {
+        this.chunks = new ByteBuffer[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            this.chunks[i] = chunks[i].duplicate();
+        }
+        this.length = length;
+    }
+
+    /**
+     * Make independent reader of the same mapped memory.
+     *
+     * @return new reader with own position
+     * @throws IOException if the reader is closed
+     */
+    public MappedRandomAccessRead duplicate() throws IOException {
+        this.assertOpen();
+        return new MappedRandomAccessRead(this.chunks, this.length);
+    }
+
+    @Override
+    public int read() throws IOException {
+        this.assertOpen();
+        if (this.position >= this.length) {
+            return -1;
+        }
+        final int result = this.chunks[(int) (this.position >>> CHUNK_BITS)].get((int) (this.position & (CHUNK_SIZE - 1))) & 0xFF;
+        this.position++;
+        return result;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        this.assertOpen();
+        if (len == 0) {
+            return 0;
+        }
+        if (this.position >= this.length) {
+            return -1;
+        }
+        int read = 0;
+        while (read < len && this.position < this.length) {
+            final ByteBuffer chunk = this.chunks[(int) (this.position >>> CHUNK_BITS)];
+            final int offsetInChunk = (int) (this.position & (CHUNK_SIZE - 1));
+            final int portion = Math.min(len - read, chunk.limit() - offsetInChunk);
+            chunk.position(offsetInChunk);
+            chunk.get(b, off + read, portion);
+            read += portion;
+            this.position += portion;
+        }
+        return read;
+    }
+
+    @Override
+    public long getPosition() throws IOException {
+        this.assertOpen();
+        return this.position;
+    }
+
+    @Override
+    public void seek(final long position) throws IOException {
+        this.assertOpen();
+        if (position < 0) {
+            throw new IOException("Invalid position " + position);
+        }
+        this.position = Math.min(position, this.length);
+    }
+
+    @Override
+    public long length() throws IOException {
+        this.assertOpen();
+        return this.length;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    @Override
+    public boolean isEOF() throws IOException {
+        this.assertOpen();
+        return this.position >= this.length;
+    }
+
+    @Override
+    public RandomAccessReadView createView(final long startPosition, final long streamLength) throws IOException {
+        this.assertOpen();
+        if (startPosition < 0 || streamLength < 0 || startPosition + streamLength > this.length) {
+            throw new EOFException("View is out of mapped file: " + startPosition + '+' + streamLength);
+        }
+        return new RandomAccessReadView(this.duplicate(), startPosition, streamLength, true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+    }
+
+    private void assertOpen() throws IOException {
+        if (this.closed) {
+            throw new IOException("Mapped file is already closed");
+        }
+    }
+}
@@ -0,0 +1,768 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import javax.imageio.ImageIO;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSObjectKey;
+
+/**
+ * Write-ahead journal of operations applied to a document, kept in a file
+ * next to the document file. Image operation is written before its
+ * execution and confirmed by commit record after it, so only completed
+ * operations are replayed after crash. Every record has length and checksum,
+ * broken tail of the file (for instance interrupted write) is ignored and
+ * cut.
+ * <p>
+ * Records are written into the file immediately but synced to disk by
+ * background thread not often than once per sync interval, so a series of
+ * operations costs one sync.
+ */
+public final class OperationJournal implements Closeable {
+
+    public static final long DEFAULT_SYNC_INTERVAL_MS = 200L;
+
+    private static final String EXTENSION = ".journal";
+    private static final int MAGIC = 0x50494A4C;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+
+    private static final byte RECORD_IMAGE = 1;
+    private static final byte RECORD_BEGIN = 2;
+    private static final byte RECORD_COMMIT = 3;
+    private static final byte RECORD_ABORT = 4;
+    private static final byte RECORD_REORDER = 5;
+    private static final byte RECORD_UNDO = 6;
+    private static final byte RECORD_REDO = 7;
+
+    /**
+     * Image to be found and what to do with it.
+     */
+    public static final class PairRecord {
+
+        /**
+         * Index of page where the image was selected.
+         */
+        public final int sourcePage;
+        public final String name;
+        public final boolean byImage;
+        public final String hideMode;
+        /**
+         * Digest of replacement image, null if the image is hidden.
+         */
+        public final byte[] replacementDigest;
+
+        public PairRecord(final int sourcePage, final String name, final boolean byImage, final String hideMode, final byte[] replacementDigest) {
+            this.sourcePage = sourcePage;
+            this.name = name;
+            this.byImage = byImage;
+            this.hideMode = hideMode;
+            this.replacementDigest = replacementDigest;
+        }
+    }
+
+    /**
+     * Completed operation.
+     */
+    public abstract static class Operation {
+
+        public final long sequence;
+        public final String title;
+        private long[] objectNumbers = new long[0];
+
+        private Operation(final long sequence, final String title) {
+            this.sequence = sequence;
+            this.title = title;
+        }
+
+        /**
+         * Get numbers of objects changed by the operation.
+         *
+         * @return sorted object numbers
+         */
+        public long[] getObjectNumbers() {
+            return this.objectNumbers.clone();
+        }
+    }
+
+    /**
+     * Find and hide or replace images.
+     */
+    public static final class ImageOperation extends Operation {
+
+        /**
+         * Processed page indexes, null if all pages were processed.
+         */
+        public final int[] pages;
+        public final List<PairRecord> pairs;
+
+        private ImageOperation(final long sequence, final String title, final int[] pages, final List<PairRecord> pairs) {
+            super(sequence, title);
+            this.pages = pages;
+            this.pairs = pairs;
+        }
+    }
+
+    /**
+     * Change of page order and document information.
+     */
+    public static final class ReorderOperation extends Operation {
+
+        /**
+         * Indexes of pages before the operation in new order.
+         */
+        public final int[] order;
+        public final String author;
+        public final String creator;
+        public final String keywords;
+        public final String documentTitle;
+
+        private ReorderOperation(final long sequence, final int[] order, final String author, final String creator, final String keywords, final String documentTitle) {
+            super(sequence, "Reorder pages");
+            this.order = order;
+            this.author = author;
+            this.creator = creator;
+            this.keywords = keywords;
+            this.documentTitle = documentTitle;
+        }
+    }
+
+    /**
+     * Operations found in journal, undone operations are excluded.
+     */
+    public static final class Replay {
+
+        private final List<Operation> operations;
+        private final Map<String, byte[]> images;
+        private final boolean brokenTail;
+
+        private Replay(final List<Operation> operations, final Map<String, byte[]> images, final boolean brokenTail) {
+            this.operations = Collections.unmodifiableList(operations);
+            this.images = images;
+            this.brokenTail = brokenTail;
+        }
+
+        public List<Operation> getOperations() {
+            return this.operations;
+        }
+
+        /**
+         * Get replacement image by its digest.
+         *
+         * @param digest digest of image
+         * @return decoded image
+         * @throws IOException if there is no such image or it can't be decoded
+         */
+        public BufferedImage getImage(final byte[] digest) throws IOException {
+            final byte[] data = this.images.get(toHex(digest));
+            if (data == null) {
+                throw new IOException("Journal doesn't contain image " + toHex(digest));
+            }
+            return ImageIO.read(new ByteArrayInputStream(data));
+        }
+
+        public boolean isBrokenTail() {
+            return this.brokenTail;
+        }
+    }
+
+    private final File file;
+    private final FileChannel channel;
+    private final Replay replay;
+    private final Map<BufferedImage, byte[]> imageDigests = new IdentityHashMap<>();
+    private final Map<String, Boolean> writtenImages = new HashMap<>();
+    private final ScheduledExecutorService syncService;
+    private final Object syncLock = new Object();
+    private long nextSequence;
+    private volatile boolean dirty;
+    private volatile IOException syncError;
+    private int records;
+    // guarded by syncLock
+    private int syncs;
+
+    private OperationJournal(final File file, final FileChannel channel, final Replay replay, final long nextSequence, final long syncIntervalMs) {
+        this.file = file;
+        this.channel = channel;
+        this.replay = replay;
+        this.nextSequence = nextSequence;
+        this.syncService = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "operation-journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.syncService.scheduleWithFixedDelay(this::syncIfDirty, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static File getJournalFile(final File document) {
+        return new File(document.getAbsoluteFile().getParentFile(), document.getName() + EXTENSION);
+    }
+
+    /**
+     * Open journal of document file. Existing journal is read if it has been
+     * made for the same size and modification time of the document, otherwise
+     * it is replaced by empty one.
+     *
+     * @param document document file, must not be null
+     * @param syncIntervalMs min interval between syncs of journal to disk
+     * @return opened journal
+     * @throws IOException if the journal can't be read or created
+     */
+    public static OperationJournal open(final File document, final long syncIntervalMs) throws IOException {
+        final File file = getJournalFile(document);
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(document.length()).putLong(document.lastModified()).flip();
+
+            Replay replay = new Replay(new ArrayList<>(), new HashMap<>(), false);
+            long nextSequence = 1L;
+            final ByteBuffer existingHeader = ByteBuffer.allocate(HEADER_SIZE);
+            if (channel.size() >= HEADER_SIZE && channel.read(existingHeader, 0L) == HEADER_SIZE && existingHeader.flip().equals(header)) {
+                final long[] validSize = new long[1];
+                final long[] maxSequence = new long[1];
+                replay = read(channel, validSize, maxSequence);
+                nextSequence = maxSequence[0] + 1L;
+                // records written after broken tail would be unreadable
+                channel.truncate(validSize[0]);
+            } else {
+                channel.truncate(0L);
+                channel.write(header, 0L);
+                channel.force(true);
+            }
+            channel.position(channel.size());
+            return new OperationJournal(file, channel, replay, nextSequence, syncIntervalMs);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private static Replay read(final FileChannel channel, final long[] validSize, final long[] maxSequence) throws IOException {
+        final Map<String, byte[]> images = new HashMap<>();
+        final Map<Long, ImageOperation> begun = new LinkedHashMap<>();
+        final List<Operation> applied = new ArrayList<>();
+        final Deque<Operation> reverted = new ArrayDeque<>();
+
+        final byte[] content = new byte[(int) Math.min(Integer.MAX_VALUE - 8L, channel.size() - HEADER_SIZE)];
+        final ByteBuffer buffer = ByteBuffer.wrap(content);
+        long position = HEADER_SIZE;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+
+        final ByteBuffer records = ByteBuffer.wrap(content, 0, buffer.position());
+        validSize[0] = HEADER_SIZE;
+        boolean brokenTail = false;
+        while (records.hasRemaining()) {
+            if (records.remaining() < 8) {
+                brokenTail = true;
+                break;
+            }
+            final int start = records.position();
+            final int length = records.getInt();
+            final int checksum = records.getInt();
+            if (length <= 0 || length > records.remaining()) {
+                brokenTail = true;
+                break;
+            }
+            final CRC32 crc = new CRC32();
+            crc.update(content, records.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                brokenTail = true;
+                break;
+            }
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(content, records.position(), length));
+            records.position(records.position() + length);
+            try {
+                final byte type = in.readByte();
+                if (type == RECORD_IMAGE) {
+                    final byte[] digest = readBytes(in);
+                    images.put(toHex(digest), readBytes(in));
+                    continue;
+                }
+                final long sequence = in.readLong();
+                maxSequence[0] = Math.max(maxSequence[0], sequence);
+                switch (type) {
+                    case RECORD_BEGIN:
+                        begun.put(sequence, readImageOperation(sequence, in));
+                        break;
+                    case RECORD_COMMIT: {
+                        final Operation operation = begun.remove(sequence);
+                        if (operation != null) {
+                            operation.objectNumbers = readLongs(in);
+                            applied.add(operation);
+                            reverted.clear();
+                        }
+                    }
+                    break;
+                    case RECORD_ABORT:
+                        begun.remove(sequence);
+                        break;
+                    case RECORD_REORDER: {
+                        final Operation operation = new ReorderOperation(sequence, readInts(in), readString(in), readString(in), readString(in), readString(in));
+                        operation.objectNumbers = readLongs(in);
+                        applied.add(operation);
+                        reverted.clear();
+                    }
+                    break;
+                    case RECORD_UNDO:
+                        if (!applied.isEmpty()) {
+                            reverted.push(applied.remove(applied.size() - 1));
+                        }
+                        break;
+                    case RECORD_REDO:
+                        if (!reverted.isEmpty()) {
+                            applied.add(reverted.pop());
+                        }
+                        break;
+                    default:
+                        throw new IOException("Unknown journal record type: " + type);
+                }
+            } catch (EOFException ex) {
+                records.position(start);
+                brokenTail = true;
+                break;
+            }
+            validSize[0] = HEADER_SIZE + records.position();
+        }
+        return new Replay(applied, images, brokenTail);
+    }
+
+    private static ImageOperation readImageOperation(final long sequence, final DataInputStream in) throws IOException {
+        final String title = in.readUTF();
+        final int[] pages = readInts(in);
+        final int pairCount = in.readInt();
+        final List<PairRecord> pairs = new ArrayList<>(pairCount);
+        for (int i = 0; i < pairCount; i++) {
+            pairs.add(new PairRecord(in.readInt(), in.readUTF(), in.readBoolean(), in.readUTF(), readBytes(in)));
+        }
+        return new ImageOperation(sequence, title, pages, pairs);
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Get operations read from journal during open.
+     *
+     * @return completed and not undone operations in order of execution
+     */
+    public Replay getReplay() {
+        return this.replay;
+    }
+
+    /**
+     * Register replacement image, its data is written into journal only once.
+     *
+     * @param image replacement image, must not be null
+     * @return digest of the image
+     * @throws IOException if the image can't be encoded or written
+     */
+    public synchronized byte[] putImage(final BufferedImage image) throws IOException {
+        byte[] digest = this.imageDigests.get(image);
+        if (digest == null) {
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            if (!ImageIO.write(image, "png", buffer)) {
+                throw new IOException("Can't encode replacement image");
+            }
+            final byte[] data = buffer.toByteArray();
+            digest = DocumentIndex.makeDigest().digest(data);
+            this.writeImage(digest, data);
+            this.imageDigests.put(image, digest);
+        }
+        return digest;
+    }
+
+    private void writeImage(final byte[] digest, final byte[] data) throws IOException {
+        if (this.writtenImages.put(toHex(digest), Boolean.TRUE) == null) {
+            final ByteArrayOutputStream record = new ByteArrayOutputStream(data.length + 64);
+            final DataOutputStream out = new DataOutputStream(record);
+            out.writeByte(RECORD_IMAGE);
+            writeBytes(out, digest);
+            writeBytes(out, data);
+            this.append(record.toByteArray());
+        }
+    }
+
+    /**
+     * Write image operation before its execution.
+     *
+     * @param title title of operation
+     * @param pages processed page indexes, null for all pages
+     * @param pairs images and their operations
+     * @return sequence number of the operation to commit or abort it
+     * @throws IOException if the record can't be written
+     */
+    public synchronized long begin(final String title, final int[] pages, final List<PairRecord> pairs) throws IOException {
+        final long sequence = this.nextSequence++;
+        final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(RECORD_BEGIN);
+        out.writeLong(sequence);
+        out.writeUTF(title);
+        writeInts(out, pages);
+        out.writeInt(pairs.size());
+        for (final PairRecord pair : pairs) {
+            out.writeInt(pair.sourcePage);
+            out.writeUTF(pair.name);
+            out.writeBoolean(pair.byImage);
+            out.writeUTF(pair.hideMode);
+            writeBytes(out, pair.replacementDigest);
+        }
+        this.append(record.toByteArray());
+        return sequence;
+    }
+
+    /**
+     * Confirm that operation has been completed.
+     *
+     * @param sequence sequence number of the operation
+     * @param changes made changes, numbers of changed objects are written
+     * @throws IOException if the record can't be written
+     */
+    public synchronized void commit(final long sequence, final List<DocumentChange> changes) throws IOException {
+        this.writeCommit(sequence, collectObjectNumbers(changes));
+    }
+
+    private void writeCommit(final long sequence, final long[] objectNumbers) throws IOException {
+        final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(RECORD_COMMIT);
+        out.writeLong(sequence);
+        writeLongs(out, objectNumbers);
+        this.append(record.toByteArray());
+    }
+
+    /**
+     * Mark operation as failed or rolled back, it is not replayed.
+     *
+     * @param sequence sequence number of the operation
+     * @throws IOException if the record can't be written
+     */
+    public synchronized void abort(final long sequence) throws IOException {
+        final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(RECORD_ABORT);
+        out.writeLong(sequence);
+        this.append(record.toByteArray());
+    }
+
+    /**
+     * Write completed change of page order.
+     *
+     * @param order indexes of pages before the change in new order
+     * @param author new author, can be null
+     * @param creator new creator, can be null
+     * @param keywords new keywords, can be null
+     * @param documentTitle new title, can be null
+     * @param changes made changes, numbers of changed objects are written
+     * @throws IOException if the record can't be written
+     */
+    public synchronized void reorder(final int[] order, final String author, final String creator, final String keywords, final String documentTitle,
+            final List<DocumentChange> changes) throws IOException {
+        this.writeReorder(order, author, creator, keywords, documentTitle, collectObjectNumbers(changes));
+    }
+
+    private void writeReorder(final int[] order, final String author, final String creator, final String keywords, final String documentTitle,
+            final long[] objectNumbers) throws IOException {
+        final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(RECORD_REORDER);
+        out.writeLong(this.nextSequence++);
+        writeInts(out, order);
+        writeString(out, author);
+        writeString(out, creator);
+        writeString(out, keywords);
+        writeString(out, documentTitle);
+        writeLongs(out, objectNumbers);
+        this.append(record.toByteArray());
+    }
+
+    public synchronized void undo() throws IOException {
+        this.appendMarker(RECORD_UNDO);
+    }
+
+    public synchronized void redo() throws IOException {
+        this.appendMarker(RECORD_REDO);
+    }
+
+    private void appendMarker(final byte type) throws IOException {
+        final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(type);
+        out.writeLong(this.nextSequence++);
+        this.append(record.toByteArray());
+    }
+
+    private void append(final byte[] payload) throws IOException {
+        final IOException error = this.syncError;
+        if (error != null) {
+            throw new IOException("Journal can't be synced", error);
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+        final ByteBuffer buffer = ByteBuffer.allocate(payload.length + 8);
+        buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        while (buffer.hasRemaining()) {
+            this.channel.write(buffer);
+        }
+        this.records++;
+        this.dirty = true;
+    }
+
+    private void syncIfDirty() {
+        try {
+            this.sync();
+        } catch (IOException ex) {
+            this.syncError = ex;
+        }
+    }
+
+    /**
+     * Force written records to disk if there are not synced ones.
+     *
+     * @throws IOException if the journal can't be synced
+     */
+    public void sync() throws IOException {
+        synchronized (this.syncLock) {
+            if (this.dirty && this.channel.isOpen()) {
+                this.dirty = false;
+                this.channel.force(false);
+                this.syncs++;
+            }
+        }
+    }
+
+    public synchronized int getRecords() {
+        return this.records;
+    }
+
+    public int getSyncs() {
+        synchronized (this.syncLock) {
+            return this.syncs;
+        }
+    }
+
+    /**
+     * Remove all operations from journal, for instance if they are declined or
+     * saved into the document file.
+     *
+     * @param document document file, its size and modification time are
+     * written into header
+     * @throws IOException if the journal can't be written
+     */
+    public synchronized void reset(final File document) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(document.length()).putLong(document.lastModified()).flip();
+        this.channel.truncate(0L);
+        this.channel.write(header, 0L);
+        this.channel.position(HEADER_SIZE);
+        this.writtenImages.clear();
+        this.imageDigests.clear();
+        this.dirty = true;
+        this.sync();
+    }
+
+    /**
+     * Rewrite journal to keep only the first operations of its replay, for
+     * instance if replay is failed or cancelled, so operations which have not
+     * been replayed in this session are not replayed after the next crash.
+     *
+     * @param document document file, its size and modification time are
+     * written into header
+     * @param replayed number of replayed operations from start of replay
+     * @throws IOException if the journal can't be written
+     */
+    public synchronized void retainReplayed(final File document, final int replayed) throws IOException {
+        final List<Operation> operations = this.replay.getOperations().subList(0, Math.min(replayed, this.replay.getOperations().size()));
+        this.reset(document);
+        for (final Operation operation : operations) {
+            if (operation instanceof ImageOperation) {
+                final ImageOperation imageOperation = (ImageOperation) operation;
+                for (final PairRecord pair : imageOperation.pairs) {
+                    if (pair.replacementDigest != null) {
+                        final byte[] data = this.replay.images.get(toHex(pair.replacementDigest));
+                        if (data == null) {
+                            throw new IOException("Journal doesn't contain image " + toHex(pair.replacementDigest));
+                        }
+                        this.writeImage(pair.replacementDigest, data);
+                    }
+                }
+                this.writeCommit(this.begin(imageOperation.title, imageOperation.pages, imageOperation.pairs), operation.objectNumbers);
+            } else {
+                final ReorderOperation reorder = (ReorderOperation) operation;
+                this.writeReorder(reorder.order, reorder.author, reorder.creator, reorder.keywords, reorder.documentTitle, operation.objectNumbers);
+            }
+        }
+        this.sync();
+    }
+
+    /**
+     * Close journal and delete its file, should be called if the document is
+     * closed normally.
+     *
+     * @throws IOException if the journal can't be deleted
+     */
+    public void delete() throws IOException {
+        this.close();
+        Files.deleteIfExists(this.file.toPath());
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.syncService.shutdown();
+        try {
+            this.sync();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Collect numbers of indirect objects touched by changes: changed objects
+     * and replaced or removed values.
+     *
+     * @param changes changes, must not be null
+     * @return sorted object numbers
+     */
+    static long[] collectObjectNumbers(final List<DocumentChange> changes) {
+        final TreeSet<Long> result = new TreeSet<>();
+        for (final DocumentChange change : changes) {
+            if (change instanceof DictionaryEntryChange) {
+                final DictionaryEntryChange entryChange = (DictionaryEntryChange) change;
+                addObjectNumber(result, entryChange.getDictionary());
+                addObjectNumber(result, entryChange.getOldValue());
+            }
+        }
+        return result.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static void addObjectNumber(final TreeSet<Long> numbers, final COSBase object) {
+        final COSObjectKey key = object instanceof COSObject ? ((COSObject) object).getKey() : object == null ? null : object.getKey();
+        if (key != null) {
+            numbers.add(key.getNumber());
+        }
+    }
+
+    private static String toHex(final byte[] data) {
+        final StringBuilder result = new StringBuilder(data.length * 2);
+        for (final byte b : data) {
+            result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return result.toString();
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeBytes(final DataOutputStream out, final byte[] data) throws IOException {
+        if (data == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(data.length);
+            out.write(data);
+        }
+    }
+
+    private static byte[] readBytes(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] result = new byte[length];
+        in.readFully(result);
+        return result;
+    }
+
+    private static void writeInts(final DataOutputStream out, final int[] values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(values.length);
+            for (final int value : values) {
+                out.writeInt(value);
+            }
+        }
+    }
+
+    private static int[] readInts(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final int[] result = new int[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = in.readInt();
+        }
+        return result;
+    }
+
+    private static void writeLongs(final DataOutputStream out, final long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (final long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    private static long[] readLongs(final DataInputStream in) throws IOException {
+        final long[] result = new long[in.readInt()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = in.readLong();
+        }
+        return result;
+    }
+}
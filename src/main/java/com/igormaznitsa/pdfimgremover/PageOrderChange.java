@@ -0,0 +1,76 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+/**
+ * Change of page order of a document. Only page lists are kept, the page
+ * tree is rebuilt on revert and apply, pages removed from the document are
+ * kept by the change, so they can be restored.
+ */
+public final class PageOrderChange implements DocumentChange {
+
+    private final PDDocument document;
+    private final DocumentChangeTracker tracker;
+    private final List<PDPage> oldPages;
+    private final List<PDPage> newPages;
+
+    private PageOrderChange(final PDDocument document, final DocumentChangeTracker tracker, final List<PDPage> oldPages, final List<PDPage> newPages) {
+        this.document = document;
+        this.tracker = tracker;
+        this.oldPages = oldPages;
+        this.newPages = newPages;
+    }
+
+    /**
+     * Rebuild page tree of document and record the change.
+     *
+     * @param document document to be changed, must not be null
+     * @param pages pages in required order, all of them must belong to the
+     * document
+     * @param tracker tracker to collect changed objects, must not be null
+     * @return made change
+     */
+    public static PageOrderChange rebuild(final PDDocument document, final List<PDPage> pages, final DocumentChangeTracker tracker) {
+        final List<PDPage> oldPages = new ArrayList<>(document.getNumberOfPages());
+        document.getPages().forEach(oldPages::add);
+        final List<PDPage> newPages = new ArrayList<>(pages);
+        PageTreeRebuilder.rebuild(document, newPages, tracker);
+        return new PageOrderChange(document, tracker, oldPages, newPages);
+    }
+
+    public int getOldPageCount() {
+        return this.oldPages.size();
+    }
+
+    public int getNewPageCount() {
+        return this.newPages.size();
+    }
+
+    @Override
+    public void revert() {
+        PageTreeRebuilder.rebuild(this.document, this.oldPages, this.tracker);
+    }
+
+    @Override
+    public void apply() {
+        PageTreeRebuilder.rebuild(this.document, this.newPages, this.tracker);
+    }
+}
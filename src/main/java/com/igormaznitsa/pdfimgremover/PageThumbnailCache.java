@@ -0,0 +1,213 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.rendering.RenderDestination;
+
+/**
+ * Cache of small page previews rendered in background. Requests come only
+ * for visible cells and are served newest first, requests which are out of
+ * the pending limit are dropped because their cells are already scrolled
+ * away. Rendered previews are kept in LRU order bounded by their size in
+ * bytes. If document index is provided then previews are taken from it and
+ * new previews are added into it.
+ * <p>
+ * PDFBox document can't be rendered from several threads, so there is only
+ * one render thread, and any other rendering of the document must be
+ * synchronized on the document object. If document executor is provided
+ * then previews are rendered under its read lock, so they are never made
+ * from half changed document.
+ */
+public final class PageThumbnailCache {
+
+    public static final int DEFAULT_THUMBNAIL_SIZE = 96;
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024L * 1024L;
+
+    private static final int MAX_PENDING = 128;
+    private static final Integer STOP = -1;
+
+    private final PDDocument document;
+    private final DocumentExecutor executor;
+    private final DocumentIndex index;
+    private final PDFRenderer renderer;
+    private final int thumbnailSize;
+    private final long maxBytes;
+    private final Runnable readyListener;
+
+    private final Map<Integer, BufferedImage> thumbnails = new LinkedHashMap<>(256, 0.75f, true);
+    private long currentBytes;
+
+    private final LinkedBlockingDeque<Integer> queue = new LinkedBlockingDeque<>();
+    private final Set<Integer> pending = new HashSet<>();
+    private final Thread renderThread;
+    private volatile boolean disposed;
+
+    /**
+     * Constructor.
+     *
+     * @param document document to render pages, must not be null
+     * @param executor executor of the document, can be null
+     * @param index index of the document file, can be null if the document
+     * is changed and it doesn't match the file
+     * @param thumbnailSize max width and height of preview in pixels
+     * @param maxBytes max size of kept previews
+     * @param readyListener listener called on EDT when new preview is ready
+     */
+    public PageThumbnailCache(final PDDocument document, final DocumentExecutor executor, final DocumentIndex index, final int thumbnailSize, final long maxBytes, final Runnable readyListener) {
+        this.document = document;
+        this.executor = executor;
+        this.index = index == null || index.getThumbnailSize() != thumbnailSize ? null : index;
+        this.renderer = new PDFRenderer(document);
+        this.thumbnailSize = thumbnailSize;
+        this.maxBytes = maxBytes;
+        this.readyListener = readyListener;
+        this.renderThread = new Thread(this::renderLoop, "page-thumbnail-renderer");
+        this.renderThread.setDaemon(true);
+        this.renderThread.start();
+    }
+
+    public int getThumbnailSize() {
+        return this.thumbnailSize;
+    }
+
+    /**
+     * Get preview of page, if it is not ready then it is queued for render.
+     *
+     * @param pageIndex zero based page index
+     * @return rendered preview or null if not ready yet
+     */
+    public synchronized BufferedImage get(final int pageIndex) {
+        final BufferedImage result = this.thumbnails.get(pageIndex);
+        if (result == null && !this.disposed && this.pending.add(pageIndex)) {
+            this.queue.offerFirst(pageIndex);
+            while (this.queue.size() > MAX_PENDING) {
+                final Integer dropped = this.queue.pollLast();
+                if (dropped != null) {
+                    this.pending.remove(dropped);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stop render thread and release previews. Waits for current render end,
+     * so that the document can be changed after the call.
+     */
+    public void dispose() {
+        this.disposed = true;
+        synchronized (this) {
+            this.queue.clear();
+            this.pending.clear();
+            this.thumbnails.clear();
+            this.currentBytes = 0L;
+            // the thread is not interrupted because interruption closes file channels used by the document
+            this.queue.offerFirst(STOP);
+        }
+        try {
+            this.renderThread.join(TimeUnit.SECONDS.toMillis(10L));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void renderLoop() {
+        while (!this.disposed) {
+            final int pageIndex;
+            try {
+                pageIndex = this.queue.takeFirst();
+            } catch (InterruptedException ex) {
+                break;
+            }
+            BufferedImage thumbnail = null;
+            try {
+                thumbnail = this.loadFromIndex(pageIndex);
+                if (thumbnail == null) {
+                    thumbnail = this.executor == null ? this.renderLocked(pageIndex) : this.executor.read(() -> this.renderLocked(pageIndex));
+                    if (thumbnail != null && this.index != null) {
+                        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                        ImageIO.write(thumbnail, "png", buffer);
+                        this.index.putThumbnail(pageIndex, buffer.toByteArray());
+                    }
+                }
+            } catch (IOException | RuntimeException ex) {
+                thumbnail = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+            }
+            if (thumbnail != null) {
+                synchronized (this) {
+                    this.pending.remove(pageIndex);
+                    if (!this.disposed) {
+                        this.put(pageIndex, thumbnail);
+                    }
+                }
+                if (!this.disposed) {
+                    SwingUtilities.invokeLater(this.readyListener);
+                }
+            }
+        }
+    }
+
+    private BufferedImage renderLocked(final int pageIndex) throws IOException {
+        synchronized (this.document) {
+            return this.disposed ? null : this.render(pageIndex);
+        }
+    }
+
+    private BufferedImage loadFromIndex(final int pageIndex) throws IOException {
+        final byte[] encoded = this.index == null ? null : this.index.getThumbnail(pageIndex);
+        return encoded == null ? null : ImageIO.read(new ByteArrayInputStream(encoded));
+    }
+
+    private BufferedImage render(final int pageIndex) throws IOException {
+        final PDRectangle box = this.document.getPage(pageIndex).getCropBox();
+        final float scale = this.thumbnailSize / Math.max(1.0f, Math.max(box.getWidth(), box.getHeight()));
+        return this.renderer.renderImage(pageIndex, scale, ImageType.RGB, RenderDestination.VIEW);
+    }
+
+    private void put(final int pageIndex, final BufferedImage thumbnail) {
+        final BufferedImage previous = this.thumbnails.put(pageIndex, thumbnail);
+        if (previous != null) {
+            this.currentBytes -= sizeOf(previous);
+        }
+        this.currentBytes += sizeOf(thumbnail);
+        final Iterator<BufferedImage> iterator = this.thumbnails.values().iterator();
+        while (iterator.hasNext() && this.thumbnails.size() > 1 && this.currentBytes > this.maxBytes) {
+            this.currentBytes -= sizeOf(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    private static long sizeOf(final BufferedImage image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4L;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+/**
+ * Replaces page tree of a document by a new balanced one in single pass,
+ * instead of removing and adding pages one by one, where every operation
+ * walks the page tree.
+ */
+public final class PageTreeRebuilder {
+
+    /**
+     * Max number of kids in a page tree node.
+     */
+    public static final int MAX_KIDS = 32;
+
+    private static final COSName[] INHERITABLE_ATTRIBUTES = new COSName[]{
+        COSName.RESOURCES, COSName.MEDIA_BOX, COSName.CROP_BOX, COSName.ROTATE
+    };
+
+    private PageTreeRebuilder() {
+    }
+
+    /**
+     * Make new page tree containing pages in defined order. The root node is
+     * kept, all intermediate nodes are replaced by new ones, attributes
+     * inherited by pages from removed intermediate nodes are copied into
+     * pages.
+     *
+     * @param document document to be changed, must not be null
+     * @param pages pages in required order, all of them must belong to the
+     * document
+     * @param tracker tracker to collect changed objects, must not be null
+     */
+    public static void rebuild(final PDDocument document, final List<PDPage> pages, final DocumentChangeTracker tracker) {
+        final COSDictionary root = document.getDocumentCatalog().getPages().getCOSObject();
+
+        final List<COSDictionary> level = new ArrayList<>(pages.size());
+        final Set<COSDictionary> pageSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (final PDPage page : pages) {
+            final COSDictionary pageDictionary = page.getCOSObject();
+            if (!pageSet.add(pageDictionary)) {
+                throw new IllegalArgumentException("Page is presented twice: " + page);
+            }
+            copyInheritedAttributes(pageDictionary, root);
+            level.add(pageDictionary);
+            tracker.markChanged(pageDictionary);
+        }
+
+        List<COSDictionary> nodes = level;
+        while (nodes.size() > MAX_KIDS) {
+            final List<COSDictionary> parents = new ArrayList<>((nodes.size() + MAX_KIDS - 1) / MAX_KIDS);
+            // spread kids uniformly to keep the tree balanced
+            final int parentCount = (nodes.size() + MAX_KIDS - 1) / MAX_KIDS;
+            int start = 0;
+            for (int i = 0; i < parentCount; i++) {
+                final int end = (int) ((long) nodes.size() * (i + 1) / parentCount);
+                final COSDictionary parent = new COSDictionary();
+                parent.setItem(COSName.TYPE, COSName.PAGES);
+                fillNode(parent, nodes.subList(start, end));
+                parents.add(parent);
+                start = end;
+            }
+            nodes = parents;
+        }
+        fillNode(root, nodes);
+        tracker.markChanged(root);
+    }
+
+    private static void fillNode(final COSDictionary node, final List<COSDictionary> kids) {
+        final COSArray kidsArray = new COSArray();
+        int count = 0;
+        for (final COSDictionary kid : kids) {
+            kid.setItem(COSName.PARENT, node);
+            kidsArray.add(kid);
+            count += COSName.PAGES.equals(kid.getCOSName(COSName.TYPE)) ? kid.getInt(COSName.COUNT, 0) : 1;
+        }
+        node.setItem(COSName.KIDS, kidsArray);
+        node.setInt(COSName.COUNT, count);
+    }
+
+    private static void copyInheritedAttributes(final COSDictionary page, final COSDictionary root) {
+        final Set<COSDictionary> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        COSDictionary parent = page.getCOSDictionary(COSName.PARENT);
+        while (parent != null && parent != root && visited.add(parent)) {
+            for (final COSName attribute : INHERITABLE_ATTRIBUTES) {
+                if (!page.containsKey(attribute)) {
+                    final COSBase value = parent.getItem(attribute);
+                    if (value != null) {
+                        page.setItem(attribute, value);
+                    }
+                }
+            }
+            parent = parent.getCOSDictionary(COSName.PARENT);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.io.IOException;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+/**
+ * Builds document index by several threads, every worker has its own
+ * document instance. Results are merged into one index and image digests
+ * are shared by object keys, which are the same for all instances of the
+ * same file.
+ */
+public final class ParallelDocumentIndexer {
+
+    private final ShardedPageProcessor processor;
+
+    public ParallelDocumentIndexer(final ShardedPageProcessor.SourceProvider source, final int threads) {
+        this.processor = new ShardedPageProcessor(source, threads);
+    }
+
+    /**
+     * Add all pages of the source document into index.
+     *
+     * @param index index to be filled, must not be null
+     * @param cancelled supplier to break indexing
+     * @param pagesProcessed consumer of number of already processed pages,
+     * called from worker threads
+     * @throws IOException if any page can't be processed or indexing is
+     * cancelled
+     */
+    public void index(final DocumentIndex index, final BooleanSupplier cancelled, final IntConsumer pagesProcessed) throws IOException {
+        final int[] pages = new int[index.getPageCount()];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = i;
+        }
+        this.processor.process(pages, index::indexPage, cancelled, pagesProcessed);
+        index.completeIndexing();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.util.Locale;
+
+/**
+ * Progress of processing of known number of items. It throttles progress
+ * updates by time, so that long jobs don't flood event dispatch thread, and
+ * makes text with speed and estimated remaining time.
+ */
+public final class ProgressMeter {
+
+    public static final int DEFAULT_UPDATES_PER_SECOND = 20;
+
+    private final int total;
+    private final String unit;
+    private final long minUpdateIntervalNanos;
+    private final long startNanos;
+    private long lastUpdateNanos;
+    private int lastReported = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param total total number of items
+     * @param unit name of items in plural form, for instance "pages"
+     * @param maxUpdatesPerSecond max number of reported updates per second
+     */
+    public ProgressMeter(final int total, final String unit, final int maxUpdatesPerSecond) {
+        this.total = Math.max(0, total);
+        this.unit = unit;
+        this.minUpdateIntervalNanos = 1000000000L / Math.max(1, maxUpdatesPerSecond);
+        this.startNanos = System.nanoTime();
+        this.lastUpdateNanos = this.startNanos - this.minUpdateIntervalNanos;
+    }
+
+    /**
+     * Register number of processed items, can be called from several threads.
+     *
+     * @param done number of processed items
+     * @return true if the update should be reported
+     */
+    public synchronized boolean update(final int done) {
+        final long now = System.nanoTime();
+        if (done == this.lastReported) {
+            return false;
+        }
+        if (done >= this.total || now - this.lastUpdateNanos >= this.minUpdateIntervalNanos) {
+            this.lastUpdateNanos = now;
+            this.lastReported = done;
+            return true;
+        }
+        return false;
+    }
+
+    public int getPercent(final int done) {
+        return this.total == 0 ? 100 : Math.min(100, Math.round(((float) done / (float) this.total) * 100.0f));
+    }
+
+    /**
+     * Make text description of progress.
+     *
+     * @param done number of processed items
+     * @return text with percent, speed and estimated remaining time
+     */
+    public String describe(final int done) {
+        final double seconds = (System.nanoTime() - this.startNanos) / 1.0e9d;
+        final StringBuilder result = new StringBuilder("Processed ").append(this.getPercent(done)).append('%');
+        if (done > 0 && seconds > 0.0d) {
+            final double speed = done / seconds;
+            result.append(String.format(Locale.ROOT, " (%.0f %s/s", speed, this.unit));
+            if (done < this.total) {
+                result.append(", ETA ").append(formatTime(Math.round((this.total - done) / speed)));
+            }
+            result.append(')');
+        }
+        return result.toString();
+    }
+
+    private static String formatTime(final long seconds) {
+        final long hours = seconds / 3600L;
+        final long minutes = (seconds / 60L) % 60L;
+        final long secs = seconds % 60L;
+        return hours > 0L
+                ? String.format(Locale.ROOT, "%d:%02d:%02d", hours, minutes, secs)
+                : String.format(Locale.ROOT, "%d:%02d", minutes, secs);
+    }
+}
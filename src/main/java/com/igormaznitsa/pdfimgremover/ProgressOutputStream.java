@@ -0,0 +1,73 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+/**
+ * Output stream which counts written bytes and breaks write if cancel is
+ * requested. Closing the stream only flushes the wrapped one, so that caller
+ * can sync and close the file itself, because PDFBox closes the stream after
+ * save.
+ */
+public final class ProgressOutputStream extends FilterOutputStream {
+
+    private final LongConsumer writtenBytesConsumer;
+    private final BooleanSupplier cancelled;
+    private long writtenBytes;
+
+    public ProgressOutputStream(final OutputStream out, final LongConsumer writtenBytesConsumer, final BooleanSupplier cancelled) {
+        super(out);
+        this.writtenBytesConsumer = writtenBytesConsumer;
+        this.cancelled = cancelled;
+    }
+
+    public long getWrittenBytes() {
+        return this.writtenBytes;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        this.assertNotCancelled();
+        this.out.write(b);
+        this.writtenBytes++;
+        this.writtenBytesConsumer.accept(this.writtenBytes);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        this.assertNotCancelled();
+        this.out.write(b, off, len);
+        this.writtenBytes += len;
+        this.writtenBytesConsumer.accept(this.writtenBytes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.out.flush();
+    }
+
+    private void assertNotCancelled() throws InterruptedIOException {
+        if (this.cancelled.getAsBoolean()) {
+            throw new InterruptedIOException("Cancelled by user");
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadView;
+
+/**
+ * Random access source which counts read bytes and breaks read if cancel is
+ * requested. Tracking is active only during document load and must be
+ * stopped when document is ready, because the source stays in use by the
+ * document.
+ */
+public final class ProgressRandomAccessRead implements RandomAccessRead {
+
+    private final RandomAccessRead delegate;
+    private volatile LongConsumer readBytesConsumer;
+    private volatile BooleanSupplier cancelled;
+    private long readBytes;
+
+    /**
+     * Constructor.
+     *
+     * @param delegate wrapped source
+     * @param readBytesConsumer consumer of number of read bytes, can be null
+     * if only cancel is needed
+     * @param cancelled supplier of cancel request
+     */
+    public ProgressRandomAccessRead(final RandomAccessRead delegate, final LongConsumer readBytesConsumer, final BooleanSupplier cancelled) {
+        this.delegate = delegate;
+        this.readBytesConsumer = readBytesConsumer;
+        this.cancelled = cancelled;
+    }
+
+    public void stopTracking() {
+        this.readBytesConsumer = null;
+        this.cancelled = null;
+    }
+
+    @Override
+    public int read() throws IOException {
+        this.assertNotCancelled();
+        final int result = this.delegate.read();
+        if (result >= 0) {
+            this.onRead(1);
+        }
+        return result;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        this.assertNotCancelled();
+        final int result = this.delegate.read(b, off, len);
+        if (result > 0) {
+            this.onRead(result);
+        }
+        return result;
+    }
+
+    @Override
+    public long getPosition() throws IOException {
+        return this.delegate.getPosition();
+    }
+
+    @Override
+    public void seek(final long position) throws IOException {
+        this.assertNotCancelled();
+        this.delegate.seek(position);
+    }
+
+    @Override
+    public long length() throws IOException {
+        return this.delegate.length();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return this.delegate.isClosed();
+    }
+
+    @Override
+    public boolean isEOF() throws IOException {
+        return this.delegate.isEOF();
+    }
+
+    @Override
+    public RandomAccessReadView createView(final long startPosition, final long streamLength) throws IOException {
+        return this.delegate.createView(startPosition, streamLength);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.delegate.close();
+    }
+
+    private void onRead(final int bytes) {
+        final LongConsumer consumer = this.readBytesConsumer;
+        if (consumer != null) {
+            this.readBytes += bytes;
+            consumer.accept(this.readBytes);
+        }
+    }
+
+    private void assertNotCancelled() throws InterruptedIOException {
+        final BooleanSupplier supplier = this.cancelled;
+        if (supplier != null && supplier.getAsBoolean()) {
+            throw new InterruptedIOException("Cancelled by user");
+        }
+    }
+}
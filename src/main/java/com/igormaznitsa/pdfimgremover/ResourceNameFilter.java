@@ -0,0 +1,107 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+
+/**
+ * Fast check that a page can contain an image with one of the names without
+ * interpretation of its content streams. XObject keys of the page resources
+ * and of resources of nested forms are checked, results are kept for
+ * resources dictionaries, so pages sharing resources cost one lookup.
+ * <p>
+ * The filter is not thread safe, every thread should have its own instance.
+ */
+public final class ResourceNameFilter {
+
+    private static final int MAX_DEPTH = 32;
+
+    private final Set<COSName> names;
+    private final Map<COSDictionary, Boolean> checkedResources = new IdentityHashMap<>();
+    private final Set<COSDictionary> inProcess = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int skippedPages;
+
+    public ResourceNameFilter(final Collection<COSName> names) {
+        this.names = new HashSet<>(names);
+    }
+
+    public int getSkippedPages() {
+        return this.skippedPages;
+    }
+
+    /**
+     * Check page.
+     *
+     * @param page page to be checked
+     * @return false if the page surely doesn't contain image with any of the
+     * names, true if the page should be processed
+     */
+    public boolean mayContain(final PDPage page) {
+        final PDResources resources = page.getResources();
+        final boolean result = resources != null && this.mayContain(resources.getCOSObject(), 0);
+        if (!result) {
+            this.skippedPages++;
+        }
+        return result;
+    }
+
+    private boolean mayContain(final COSDictionary resources, final int depth) {
+        final Boolean known = this.checkedResources.get(resources);
+        if (known != null) {
+            return known;
+        }
+        if (depth > MAX_DEPTH || !this.inProcess.add(resources)) {
+            // broken or cyclic structure, let the page be processed
+            return true;
+        }
+        boolean result = false;
+        final COSDictionary xobjects = resources.getCOSDictionary(COSName.XOBJECT);
+        if (xobjects != null) {
+            for (final COSName key : xobjects.keySet()) {
+                if (this.names.contains(key)) {
+                    result = true;
+                    break;
+                }
+            }
+            if (!result) {
+                for (final COSName key : xobjects.keySet()) {
+                    final COSBase value = xobjects.getDictionaryObject(key);
+                    if (value instanceof COSStream && COSName.FORM.equals(((COSStream) value).getCOSName(COSName.SUBTYPE))) {
+                        final COSDictionary formResources = ((COSStream) value).getCOSDictionary(COSName.RESOURCES);
+                        if (formResources != null && this.mayContain(formResources, depth + 1)) {
+                            result = true;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        this.inProcess.remove(resources);
+        this.checkedResources.put(resources, result);
+        return result;
+    }
+}
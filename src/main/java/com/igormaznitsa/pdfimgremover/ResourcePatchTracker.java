@@ -0,0 +1,143 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+
+/**
+ * Tracker of resources dictionaries touched by image replacement. Many pages
+ * share the same resources dictionary, so entries are tracked by dictionary
+ * identity: an entry is written only once, and a page is not interpreted
+ * again if all images of its resources tree (including nested forms) have
+ * already been seen on other pages. Skipping pages is correct only if found
+ * images are changed through resources and not through content streams.
+ * <p>
+ * The tracker is not thread safe, it should be used under lock of the
+ * document.
+ */
+public final class ResourcePatchTracker {
+
+    private static final int MAX_DEPTH = 32;
+
+    private final Map<COSDictionary, Set<COSName>> patchedEntries = new IdentityHashMap<>();
+    private final Map<COSDictionary, Set<COSName>> scannedEntries = new IdentityHashMap<>();
+    private final Set<COSDictionary> handledResources = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private int avoidedWrites;
+    private int skippedPages;
+    private long checkNanos;
+
+    /**
+     * Register write of resources entry.
+     *
+     * @param resources resources to be changed
+     * @param name name of entry
+     * @return true if the entry should be written, false if it has been
+     * already written
+     */
+    public boolean markPatched(final PDResources resources, final COSName name) {
+        if (this.patchedEntries.computeIfAbsent(resources.getCOSObject(), x -> new HashSet<>()).add(name)) {
+            return true;
+        }
+        this.avoidedWrites++;
+        return false;
+    }
+
+    /**
+     * Register image found on page, the image will get its decision, so it
+     * doesn't need to be found again on other pages.
+     *
+     * @param found found image
+     */
+    public void markScanned(final ImageFinderStreamEngine.FoundImage found) {
+        this.scannedEntries.computeIfAbsent(found.resources.getCOSObject(), x -> new HashSet<>()).add(found.name);
+    }
+
+    /**
+     * Check that all images which can be used by page were already found on
+     * other pages.
+     *
+     * @param page page to be checked
+     * @return true if the page can be skipped
+     */
+    public boolean isHandled(final PDPage page) {
+        final long start = System.nanoTime();
+        try {
+            final PDResources resources = page.getResources();
+            final boolean result = resources != null && this.isHandled(resources.getCOSObject(), 0);
+            if (result) {
+                this.skippedPages++;
+            }
+            return result;
+        } finally {
+            this.checkNanos += System.nanoTime() - start;
+        }
+    }
+
+    private boolean isHandled(final COSDictionary resources, final int depth) {
+        if (this.handledResources.contains(resources)) {
+            return true;
+        }
+        if (depth > MAX_DEPTH) {
+            return false;
+        }
+        final COSDictionary xobjects = resources.getCOSDictionary(COSName.XOBJECT);
+        if (xobjects != null) {
+            final Set<COSName> scanned = this.scannedEntries.getOrDefault(resources, Collections.emptySet());
+            for (final COSName key : xobjects.keySet()) {
+                final COSBase value = xobjects.getDictionaryObject(key);
+                if (!(value instanceof COSStream)) {
+                    continue;
+                }
+                final COSName subtype = ((COSStream) value).getCOSName(COSName.SUBTYPE);
+                if (COSName.IMAGE.equals(subtype)) {
+                    if (!scanned.contains(key)) {
+                        return false;
+                    }
+                } else if (COSName.FORM.equals(subtype)) {
+                    final COSDictionary formResources = ((COSStream) value).getCOSDictionary(COSName.RESOURCES);
+                    if (formResources != null && formResources != resources && !this.isHandled(formResources, depth + 1)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        this.handledResources.add(resources);
+        return true;
+    }
+
+    public int getAvoidedWrites() {
+        return this.avoidedWrites;
+    }
+
+    public int getSkippedPages() {
+        return this.skippedPages;
+    }
+
+    public long getCheckMillis() {
+        return this.checkNanos / 1000000L;
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.pdfbox.contentstream.PDContentStream;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorName;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.font.PDType3CharProc;
+import org.apache.pdfbox.pdmodel.font.PDType3Font;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.pattern.PDTilingPattern;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceDictionary;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceEntry;
+
+/**
+ * Garbage collector for XObject resources. Walks all content streams of a
+ * document, collects names of XObjects which are really invoked for every
+ * resources dictionary and removes entries which are not invoked anymore, so
+ * that they are not written into saved document. One XObject dictionary can
+ * be shared by several resources dictionaries, so an entry is removed only if
+ * it is not invoked through any of them.
+ * <p>
+ * Removals are recorded as document changes, so they can be reverted when
+ * the document has been written.
+ */
+public final class ResourcePruner {
+
+    public static final class Result {
+
+        public final int removedEntries;
+        public final int droppedStreams;
+        public final long reclaimedBytes;
+
+        private Result(final int removedEntries, final int droppedStreams, final long reclaimedBytes) {
+            this.removedEntries = removedEntries;
+            this.droppedStreams = droppedStreams;
+            this.reclaimedBytes = reclaimedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "removed " + this.removedEntries + " resource entry(s), dropped " + this.droppedStreams + " stream(s), reclaimed " + this.reclaimedBytes + " byte(s)";
+        }
+    }
+
+    private final PDDocument document;
+    private final Map<COSDictionary, Set<COSName>> usedNames = new IdentityHashMap<>();
+    private final Set<COSDictionary> unsafeResources = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<COSBase, Set<COSDictionary>> visitedStreams = new IdentityHashMap<>();
+
+    public ResourcePruner(final PDDocument document) {
+        this.document = document;
+    }
+
+    /**
+     * Remove not invoked XObject entries.
+     *
+     * @param changes list to record made removals, must not be null
+     * @return result of pruning
+     * @throws IOException if the document can't be read
+     */
+    public Result prune(final List<DocumentChange> changes) throws IOException {
+        this.usedNames.clear();
+        this.unsafeResources.clear();
+        this.visitedStreams.clear();
+
+        for (final PDPage page : this.document.getPages()) {
+            final PDResources pageResources = page.getResources();
+            this.visit(page, page.getCOSObject(), pageResources);
+            for (final PDAnnotation annotation : page.getAnnotations()) {
+                final PDAppearanceDictionary appearance = annotation.getAppearance();
+                if (appearance != null) {
+                    this.visitAppearance(appearance.getNormalAppearance(), pageResources);
+                    this.visitAppearance(appearance.getRolloverAppearance(), pageResources);
+                    this.visitAppearance(appearance.getDownAppearance(), pageResources);
+                }
+            }
+        }
+
+        // names used through all owners of the same XObject dictionary, null if the dictionary must be kept as is
+        final Map<COSDictionary, Set<COSName>> usedXObjectNames = new IdentityHashMap<>();
+        for (final Map.Entry<COSDictionary, Set<COSName>> e : this.usedNames.entrySet()) {
+            final COSDictionary xobjects = e.getKey().getCOSDictionary(COSName.XOBJECT);
+            if (xobjects == null) {
+                continue;
+            }
+            if (this.unsafeResources.contains(e.getKey())) {
+                usedXObjectNames.put(xobjects, null);
+            } else if (!usedXObjectNames.containsKey(xobjects)) {
+                usedXObjectNames.put(xobjects, new HashSet<>(e.getValue()));
+            } else if (usedXObjectNames.get(xobjects) != null) {
+                usedXObjectNames.get(xobjects).addAll(e.getValue());
+            }
+        }
+
+        final Set<COSBase> alive = Collections.newSetFromMap(new IdentityHashMap<>());
+        final List<COSBase> removed = new ArrayList<>();
+
+        for (final Map.Entry<COSDictionary, Set<COSName>> e : usedXObjectNames.entrySet()) {
+            final COSDictionary xobjects = e.getKey();
+            for (final COSName name : new ArrayList<>(xobjects.keySet())) {
+                final COSBase value = xobjects.getDictionaryObject(name);
+                if (e.getValue() == null || e.getValue().contains(name)) {
+                    alive.add(value);
+                } else {
+                    changes.add(DictionaryEntryChange.setItem(xobjects, name, null));
+                    removed.add(value);
+                }
+            }
+        }
+
+        final Set<COSBase> dropped = Collections.newSetFromMap(new IdentityHashMap<>());
+        long reclaimedBytes = 0L;
+        for (final COSBase value : removed) {
+            if (value instanceof COSStream && !alive.contains(value) && dropped.add(value)) {
+                final COSStream stream = (COSStream) value;
+                reclaimedBytes += stream.getLength();
+                final COSBase softMask = stream.getDictionaryObject(COSName.SMASK);
+                if (softMask instanceof COSStream && !alive.contains(softMask) && dropped.add(softMask)) {
+                    reclaimedBytes += ((COSStream) softMask).getLength();
+                }
+            }
+        }
+
+        return new Result(removed.size(), dropped.size(), reclaimedBytes);
+    }
+
+    private void visitAppearance(final PDAppearanceEntry entry, final PDResources pageResources) {
+        if (entry == null) {
+            return;
+        }
+        if (entry.isStream()) {
+            this.visitForm(entry.getAppearanceStream(), pageResources);
+        } else if (entry.isSubDictionary()) {
+            entry.getSubDictionary().values().forEach(x -> this.visitForm(x, pageResources));
+        }
+    }
+
+    private void visitForm(final PDFormXObject form, final PDResources parentResources) {
+        final PDResources formResources = form.getResources();
+        this.visit(form, form.getCOSObject(), formResources == null ? parentResources : formResources);
+    }
+
+    private void visit(final PDContentStream contentStream, final COSBase key, final PDResources resources) {
+        if (resources == null) {
+            return;
+        }
+        final COSDictionary resourcesDictionary = resources.getCOSObject();
+        if (!this.visitedStreams.computeIfAbsent(key, k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(resourcesDictionary)) {
+            return;
+        }
+
+        final boolean firstVisitOfResources = !this.usedNames.containsKey(resourcesDictionary);
+        final Set<COSName> used = this.usedNames.computeIfAbsent(resourcesDictionary, k -> new HashSet<>());
+
+        final List<Object> tokens;
+        try {
+            if (firstVisitOfResources) {
+                this.visitNestedContent(resources);
+            }
+            final PDFStreamParser parser = new PDFStreamParser(contentStream);
+            try {
+                tokens = parser.parse();
+            } finally {
+                parser.close();
+            }
+        } catch (IOException ex) {
+            this.unsafeResources.add(resourcesDictionary);
+            return;
+        }
+
+        final COSDictionary xobjects = resourcesDictionary.getCOSDictionary(COSName.XOBJECT);
+        Object prev = null;
+        for (final Object token : tokens) {
+            if (token instanceof Operator
+                    && OperatorName.DRAW_OBJECT.equals(((Operator) token).getName())
+                    && prev instanceof COSName) {
+                final COSName name = (COSName) prev;
+                used.add(name);
+                final COSBase xobject = xobjects == null ? null : xobjects.getDictionaryObject(name);
+                if (xobject instanceof COSStream && COSName.FORM.equals(((COSStream) xobject).getCOSName(COSName.SUBTYPE))) {
+                    this.visitForm(new PDFormXObject((COSStream) xobject), resources);
+                }
+            }
+            prev = token;
+        }
+    }
+
+    private void visitNestedContent(final PDResources resources) throws IOException {
+        for (final COSName name : resources.getExtGStateNames()) {
+            final COSDictionary extGState = resources.getCOSObject().getCOSDictionary(COSName.EXT_G_STATE).getCOSDictionary(name);
+            final COSDictionary softMask = extGState == null ? null : extGState.getCOSDictionary(COSName.SMASK);
+            final COSBase group = softMask == null ? null : softMask.getDictionaryObject(COSName.G);
+            if (group instanceof COSStream) {
+                this.visitForm(new PDFormXObject((COSStream) group), resources);
+            }
+        }
+
+        for (final COSName name : resources.getPatternNames()) {
+            final COSBase pattern = resources.getCOSObject().getCOSDictionary(COSName.PATTERN).getDictionaryObject(name);
+            if (pattern instanceof COSStream) {
+                final PDTilingPattern tilingPattern = new PDTilingPattern((COSStream) pattern);
+                final PDResources patternResources = tilingPattern.getResources();
+                this.visit(tilingPattern, pattern, patternResources == null ? resources : patternResources);
+            }
+        }
+
+        for (final COSName name : resources.getFontNames()) {
+            final COSBase font = resources.getCOSObject().getCOSDictionary(COSName.FONT).getDictionaryObject(name);
+            if (font instanceof COSDictionary && COSName.TYPE3.equals(((COSDictionary) font).getCOSName(COSName.SUBTYPE))) {
+                final PDType3Font type3Font = new PDType3Font((COSDictionary) font);
+                final PDResources fontResources = type3Font.getResources();
+                final COSDictionary charProcs = type3Font.getCharProcs();
+                if (charProcs != null) {
+                    for (final COSName glyph : charProcs.keySet()) {
+                        final COSBase charProc = charProcs.getDictionaryObject(glyph);
+                        if (charProc instanceof COSStream) {
+                            this.visit(new PDType3CharProc(type3Font, (COSStream) charProc), charProc, fontResources == null ? resources : fontResources);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageTree;
+
+/**
+ * Processes pages of a document file by several threads. PDFBox document is
+ * not thread safe, so every worker parses its own read only document
+ * instance over its own reader of the same source (shared file mapping or
+ * file read through OS page cache) and takes page ranges (shards) from a
+ * shared counter. Workers see the file, so changes of an opened document
+ * which are not saved into the file are not visible for them.
+ */
+public final class ShardedPageProcessor {
+
+    /**
+     * Number of pages in range taken by worker at once.
+     */
+    private static final int RANGE_SIZE = 16;
+    /**
+     * Min number of pages per worker, parsing of own document instance makes
+     * no sense for less pages.
+     */
+    private static final int MIN_PAGES_PER_THREAD = 64;
+
+    /**
+     * Provider of independent readers of the same document source.
+     */
+    @FunctionalInterface
+    public interface SourceProvider {
+
+        RandomAccessRead open() throws IOException;
+    }
+
+    /**
+     * Task called for every page in worker thread.
+     */
+    @FunctionalInterface
+    public interface PageTask {
+
+        /**
+         * Process page.
+         *
+         * @param pageIndex zero based page index in document
+         * @param page page of document instance of the worker
+         * @param finder engine owned by the worker
+         * @throws IOException if page can't be processed
+         */
+        void process(int pageIndex, PDPage page, ImageFinderStreamEngine finder) throws IOException;
+    }
+
+    private final SourceProvider source;
+    private final int threads;
+
+    public ShardedPageProcessor(final SourceProvider source, final int threads) {
+        this.source = source;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Get number of workers for pages.
+     *
+     * @param pageCount number of pages to be processed
+     * @param maxThreads max allowed number of threads
+     * @return number of workers, 1 means that parallel processing is useless
+     */
+    public static int calcThreads(final int pageCount, final int maxThreads) {
+        return Math.max(1, Math.min(maxThreads, pageCount / MIN_PAGES_PER_THREAD));
+    }
+
+    /**
+     * Process pages.
+     *
+     * @param pageIndexes indexes of pages to be processed, must not be null
+     * @param task task for every page, must be thread safe
+     * @param cancelled supplier to break processing
+     * @param pagesProcessed consumer of number of already processed pages,
+     * called from worker threads
+     * @throws IOException if any page can't be processed or processing is
+     * cancelled
+     */
+    public void process(final int[] pageIndexes, final PageTask task, final BooleanSupplier cancelled, final IntConsumer pagesProcessed) throws IOException {
+        final AtomicInteger nextPosition = new AtomicInteger();
+        final AtomicInteger processed = new AtomicInteger();
+        final AtomicBoolean failed = new AtomicBoolean();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < this.threads; i++) {
+                futures.add(executor.submit(() -> {
+                    try (PDDocument view = Loader.loadPDF(this.source.open(), IOUtils.createMemoryOnlyStreamCache())) {
+                        final PDPageTree pages = view.getPages();
+                        final ImageFinderStreamEngine finder = new ImageFinderStreamEngine();
+                        int start;
+                        while ((start = nextPosition.getAndAdd(RANGE_SIZE)) < pageIndexes.length) {
+                            final int end = Math.min(pageIndexes.length, start + RANGE_SIZE);
+                            for (int position = start; position < end; position++) {
+                                if (failed.get() || cancelled.getAsBoolean()) {
+                                    throw new InterruptedIOException("Cancelled");
+                                }
+                                task.process(pageIndexes[position], pages.get(pageIndexes[position]), finder);
+                                pagesProcessed.accept(processed.incrementAndGet());
+                            }
+                        }
+                    } catch (IOException | RuntimeException ex) {
+                        failed.set(true);
+                        throw ex;
+                    }
+                    return null;
+                }));
+            }
+
+            IOException error = null;
+            for (final Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    // the first real error is more interesting than cancel of other workers
+                    if (error == null || (error instanceof InterruptedIOException && !(ex.getCause() instanceof InterruptedIOException))) {
+                        error = ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause());
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    failed.set(true);
+                    throw new InterruptedIOException("Interrupted");
+                }
+            }
+            if (error != null) {
+                if (cancelled.getAsBoolean()) {
+                    throw new InterruptedIOException("Cancelled by user");
+                }
+                throw error;
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2026 igormaznitsa.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.pdfimgremover;
+
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessStreamCache.StreamCacheCreateFunction;
+
+/**
+ * Storage for decoded and newly created streams of opened document.
+ */
+public enum StreamCacheMode {
+    /**
+     * All streams are kept in heap.
+     */
+    MEMORY_ONLY("Memory only"),
+    /**
+     * Streams are kept in heap up to limit, then in temp file.
+     */
+    MIXED("Memory up to limit, then temp file"),
+    /**
+     * All streams are kept in temp file.
+     */
+    TEMP_FILE_ONLY("Temp file only"),
+    /**
+     * Mode is selected by document file size and current max heap.
+     */
+    AUTO("Automatic by file and heap size");
+
+    private static final long MB = 1024L * 1024L;
+
+    private final String title;
+
+    StreamCacheMode(final String title) {
+        this.title = title;
+    }
+
+    public static StreamCacheMode findForName(final String name, final StreamCacheMode defaultMode) {
+        for (final StreamCacheMode mode : values()) {
+            if (mode.name().equals(name)) {
+                return mode;
+            }
+        }
+        return defaultMode;
+    }
+
+    /**
+     * Get concrete mode for document. Documents which together with their
+     * decoded streams fit into a quarter of available heap are kept in memory,
+     * bigger ones use mixed mode while there is reasonable heap, otherwise
+     * temp file is used.
+     *
+     * @param fileSize size of document file in bytes
+     * @return concrete mode, never {@link #AUTO}
+     */
+    public StreamCacheMode resolve(final long fileSize) {
+        if (this != AUTO) {
+            return this;
+        }
+        final long availableHeap = getAvailableHeap();
+        if (fileSize * 2L < availableHeap / 4L) {
+            return MEMORY_ONLY;
+        } else if (availableHeap / 4L >= 64L * MB) {
+            return MIXED;
+        } else {
+            return TEMP_FILE_ONLY;
+        }
+    }
+
+    /**
+     * Get heap limit for mixed mode.
+     *
+     * @param configuredLimitMb limit configured by user in megabytes
+     * @return limit in bytes, for automatic mode it is quarter of available
+     * heap
+     */
+    public long getMemoryLimitBytes(final int configuredLimitMb) {
+        return this == AUTO ? getAvailableHeap() / 4L : configuredLimitMb * MB;
+    }
+
+    /**
+     * Make stream cache of concrete mode, automatic mode must be resolved
+     * before, so that the used mode is the same as the reported one.
+     *
+     * @param memoryLimitBytes heap limit for mixed mode
+     * @return function to create stream cache
+     * @see #resolve(long)
+     * @see #getMemoryLimitBytes(int)
+     */
+    public StreamCacheCreateFunction makeStreamCache(final long memoryLimitBytes) {
+        switch (this) {
+            case MEMORY_ONLY:
+                return IOUtils.createMemoryOnlyStreamCache();
+            case MIXED:
+                return MemoryUsageSetting.setupMixed(memoryLimitBytes).streamCache;
+            case TEMP_FILE_ONLY:
+                return IOUtils.createTempFileOnlyStreamCache();
+            default:
+                throw new IllegalStateException("Unresolved mode: " + this);
+        }
+    }
+
+    private static long getAvailableHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    @Override
+    public String toString() {
+        return this.title;
+    }
+}